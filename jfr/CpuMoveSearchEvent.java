@@ -0,0 +1,40 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one move chosen by the CPU, lasting from the
+ * start of the search to the choice. Emitted by CPU.getAIMove on the thread
+ * that searched, so pondered replies are recorded too, on the CPU search
+ * thread.
+ */
+@Name("ConnectFour.CpuMoveSearch")
+@Label("CPU Move Search")
+@Category({ "Connect Four", "CPU" })
+@Description("The CPU choosing a move")
+public class CpuMoveSearchEvent extends jdk.jfr.Event {
+	@Label("Difficulty")
+	String difficulty;
+
+	@Label("Source")
+	@Description("How the move was chosen: random, book, store, solver, mcts or search")
+	String source;
+
+	@Label("Pieces")
+	@Description("Number of pieces on the board before the move")
+	int pieces;
+
+	@Label("Depth Reached")
+	int depth;
+
+	@Label("Nodes")
+	long nodes;
+
+	@Label("Column")
+	int column;
+
+	@Label("Score")
+	@Description("Score of the chosen column from the CPU's point of view")
+	int score;
+}
@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a whole game, lasting from its first move to its
+ * result, emitted by GameController.
+ */
+@Name("ConnectFour.GameFinished")
+@Label("Game Finished")
+@Category({ "Connect Four", "Game" })
+@Description("A game of Connect Four ending")
+public class GameFinishedEvent extends jdk.jfr.Event {
+	@Label("Difficulty")
+	String difficulty;
+
+	@Label("Result")
+	@Description("Player win, CPU win, tie, or abandoned if the player left the game")
+	String result;
+
+	@Label("Moves")
+	@Description("Number of pieces played by both players")
+	int moves;
+}
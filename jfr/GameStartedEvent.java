@@ -0,0 +1,23 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for the first move of a game, emitted by
+ * GameController.
+ */
+@Name("ConnectFour.GameStarted")
+@Label("Game Started")
+@Category({ "Connect Four", "Game" })
+@Description("A game of Connect Four starting")
+public class GameStartedEvent extends jdk.jfr.Event {
+	@Label("Difficulty")
+	String difficulty;
+
+	@Label("Player Color")
+	String playerColor;
+
+	@Label("CPU Color")
+	String cpuColor;
+}
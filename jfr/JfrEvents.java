@@ -0,0 +1,100 @@
+/**
+ * Emits the game's events to Java Flight Recorder. Loaded by
+ * FlightRecorderEvents.initialize only on a JVM that has jdk.jfr, so none of
+ * the classes in this folder are needed to run the game.
+ */
+public class JfrEvents extends FlightRecorderEvents {
+
+	/**
+	 * Creates the events once, so that Flight Recorder loads and registers
+	 * their classes now rather than when the first one is recorded
+	 */
+	public JfrEvents() {
+		new CpuMoveSearchEvent().shouldCommit();
+		new GameStartedEvent().shouldCommit();
+		new GameFinishedEvent().shouldCommit();
+		new MoveAppliedEvent().shouldCommit();
+	}
+
+	@Override
+	public Object beginCpuMoveSearch() {
+		CpuMoveSearchEvent event = new CpuMoveSearchEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void commitCpuMoveSearch(Object e, CPU cpu, char mode, char[][] board, int column) {
+		CpuMoveSearchEvent event = (CpuMoveSearchEvent) e;
+		event.end();
+		if (event.shouldCommit()) {
+			event.difficulty = SearchStats.getDifficultyName(mode);
+			event.source = SearchStats.getSource(cpu);
+			event.pieces = new BitBoard(board, 'R').getMoves();
+			event.depth = cpu.getDepthReached();
+			event.nodes = cpu.getNodesSearched();
+			event.column = column;
+			event.score = cpu.getScore();
+			event.commit();
+		}
+	}
+
+	@Override
+	public void gameStarted(char mode, char playerColor, char cpuColor) {
+		GameStartedEvent event = new GameStartedEvent();
+		if (event.shouldCommit()) {
+			event.difficulty = SearchStats.getDifficultyName(mode);
+			event.playerColor = String.valueOf(playerColor);
+			event.cpuColor = String.valueOf(cpuColor);
+			event.commit();
+		}
+	}
+
+	@Override
+	public Object beginGame(char mode) {
+		GameFinishedEvent event = new GameFinishedEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		event.difficulty = SearchStats.getDifficultyName(mode);
+		return event;
+	}
+
+	@Override
+	public void commitGame(Object e, String result, int moves) {
+		GameFinishedEvent event = (GameFinishedEvent) e;
+		event.end();
+		if (event.shouldCommit()) {
+			event.result = result;
+			event.moves = moves;
+			event.commit();
+		}
+	}
+
+	@Override
+	public Object beginMoveApplied() {
+		MoveAppliedEvent event = new MoveAppliedEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void commitMoveApplied(Object e, String player, int column, int row, boolean win) {
+		MoveAppliedEvent event = (MoveAppliedEvent) e;
+		event.end();
+		if (event.shouldCommit()) {
+			event.player = player;
+			event.column = column;
+			event.row = row;
+			event.win = win;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,27 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for BoardScreen applying a move on the Swing event
+ * thread: filling the space, updating the game and checking for a win.
+ */
+@Name("ConnectFour.MoveApplied")
+@Label("Move Applied")
+@Category({ "Connect Four", "UI" })
+@Description("The board screen applying a move")
+public class MoveAppliedEvent extends jdk.jfr.Event {
+	@Label("Player")
+	@Description("Player or CPU")
+	String player;
+
+	@Label("Column")
+	int column;
+
+	@Label("Row")
+	int row;
+
+	@Label("Winning Move")
+	boolean win;
+}
@@ -0,0 +1,218 @@
+import java.util.Random;
+
+import connectfour.jmh.Engine;
+
+/**
+ * Runs the parts of the game that the JMH benchmarks in connectfour.jmh
+ * measure. It is in the default package with the game's classes so that it
+ * can use them, and the benchmarks load it by name (see Engine.load).
+ */
+public class BenchmarkEngine implements Engine {
+	private static final long SEED = 20171120L;
+
+	// one game played by the Advanced CPU against itself at depth 8; its
+	// first EARLY, MID and LATE moves are the benchmark positions
+	private static final String GAME = "4551550444614110540100522222213666333";
+
+	private final BitBoard[] positions = randomPositions(POSITION_COUNT, SEED);
+	private final char[][][] boards = new char[POSITION_COUNT][][];
+	private final int[][] lastMoves = new int[POSITION_COUNT][];
+	private final LineEvaluator evaluator = new LineEvaluator();
+	private final BitBoard b = new BitBoard();
+	private final GameModel model = new GameModel();
+	private TranspositionTable table;
+	private CPU cpu;
+
+	/**
+	 * Creates the random positions
+	 */
+	public BenchmarkEngine() {
+		for (int i = 0; i < POSITION_COUNT; i++) {
+			boards[i] = toBoard(positions[i]);
+			lastMoves[i] = topPiece(boards[i]);
+		}
+	}
+
+	@Override
+	public void setUpAdvancedMove(int moves, int depth) {
+		GameModel game = new GameModel();
+		for (int i = 0; i < moves; i++) {
+			game.makeMove(GAME.charAt(i) - '0', (i % 2 == 0) ? 'R' : 'Y');
+		}
+		// the CPU plays whoever is to move
+		game.setPlayerColor((moves % 2 == 0) ? 'Y' : 'R');
+
+		BitBoard position = new BitBoard(game.getBoard(), game.getCPUColor());
+		if (position.lastPlayerHasWon() || position.boardIsFull()) {
+			throw new IllegalStateException("The position after " + moves + " moves is over");
+		}
+
+		if (table == null) {
+			table = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
+		}
+		table.clear();
+		cpu = new CPU(game, 'A', table);
+		cpu.setOpeningBook(null);
+		cpu.setSolvedPositionStore(null);
+		cpu.setSearchDepth(depth);
+		cpu.setTimeBudget(0);
+		cpu.setSearchStats(null);
+	}
+
+	@Override
+	public int advancedMove() {
+		return cpu.getAIMove();
+	}
+
+	@Override
+	public long evaluateFromScratch() {
+		long sum = 0;
+		for (BitBoard position : positions) {
+			evaluator.set(position);
+			sum += evaluator.getScore();
+		}
+		return sum;
+	}
+
+	@Override
+	public long evaluateIncremental() {
+		long sum = 0;
+		for (BitBoard position : positions) {
+			evaluator.set(position);
+			int player = position.getMoves() & 1;
+			for (int column = 0; column < BitBoard.COLUMNS; column++) {
+				if (position.isLegalMove(column)) {
+					int index = position.getMoveIndex(column);
+					evaluator.add(index, player);
+					sum += evaluator.getScore();
+					evaluator.remove(index, player);
+				}
+			}
+		}
+		return sum;
+	}
+
+	@Override
+	public long winBitboard() {
+		long wins = 0;
+		for (BitBoard position : positions) {
+			if (Rules.isWin(position.getCurrent()) || Rules.isWin(position.getOpponent())) {
+				wins++;
+			}
+		}
+		return wins;
+	}
+
+	@Override
+	public long winLastMove() {
+		long wins = 0;
+		for (int i = 0; i < boards.length; i++) {
+			if (Rules.isWinningMove(boards[i], lastMoves[i][0], lastMoves[i][1])) {
+				wins++;
+			}
+		}
+		return wins;
+	}
+
+	@Override
+	public long winWholeBoard() {
+		long wins = 0;
+		for (char[][] board : boards) {
+			if (Rules.isWin(board, 'R') || Rules.isWin(board, 'Y')) {
+				wins++;
+			}
+		}
+		return wins;
+	}
+
+	@Override
+	public long gameModelMakeMove() {
+		model.resetBoard();
+		// filling the board column by column never makes a win that matters
+		// to GameModel
+		for (int column = 0; column < BitBoard.COLUMNS; column++) {
+			for (int row = 0; row < BitBoard.ROWS; row++) {
+				model.makeMove(column, (row % 2 == 0) ? 'R' : 'Y');
+			}
+		}
+		return model.getLastMoveRow();
+	}
+
+	@Override
+	public long bitBoardMakeUndo() {
+		long sum = 0;
+		for (BitBoard position : positions) {
+			b.set(position);
+			for (int column = 0; column < BitBoard.COLUMNS; column++) {
+				if (b.placeMove(column)) {
+					sum += b.getHash();
+					b.undoMove(column);
+				}
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Plays random games from a seeded generator and keeps a position from
+	 * each, at a random point before the game is over
+	 */
+	private static BitBoard[] randomPositions(int count, long seed) {
+		Random rand = new Random(seed);
+		BitBoard[] positions = new BitBoard[count];
+
+		for (int i = 0; i < count; i++) {
+			BitBoard b = new BitBoard();
+			int length = rand.nextInt(BitBoard.ROWS * BitBoard.COLUMNS - 1);
+			while (b.getMoves() < length) {
+				int column = rand.nextInt(BitBoard.COLUMNS);
+				if (!b.isLegalMove(column)) {
+					continue;
+				}
+				b.placeMove(column);
+				if (b.lastPlayerHasWon()) {
+					b.undoMove(column);
+					break;
+				}
+			}
+			positions[i] = b;
+		}
+		return positions;
+	}
+
+	/**
+	 * Converts a position to a GameModel board, red having moved first
+	 */
+	private static char[][] toBoard(BitBoard b) {
+		char toMove = (b.getMoves() % 2 == 0) ? 'R' : 'Y';
+		char other = (toMove == 'R') ? 'Y' : 'R';
+		char[][] board = new char[BitBoard.ROWS][BitBoard.COLUMNS];
+
+		for (int i = 0; i < BitBoard.ROWS; i++) {
+			for (int j = 0; j < BitBoard.COLUMNS; j++) {
+				long bit = BitBoard.cellBit(i, j);
+				if ((b.getCurrent() & bit) != 0) {
+					board[i][j] = toMove;
+				} else if ((b.getOpponent() & bit) != 0) {
+					board[i][j] = other;
+				}
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * Finds the top piece of the leftmost column that has one, standing in
+	 * for the last move
+	 */
+	private static int[] topPiece(char[][] board) {
+		for (int j = 0; j < BitBoard.COLUMNS; j++) {
+			for (int i = 0; i < BitBoard.ROWS; i++) {
+				if (board[i][j] != 0) {
+					return new int[] { i, j };
+				}
+			}
+		}
+		return new int[] { BitBoard.ROWS - 1, 0 };
+	}
+}
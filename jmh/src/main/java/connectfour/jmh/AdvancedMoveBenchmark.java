@@ -0,0 +1,55 @@
+package connectfour.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A full Advanced move from a cold table, without the opening book, for the
+ * early and middle positions of the benchmark game at each search depth.
+ * The late position is solved rather than searched to a depth, so it is
+ * measured once, by EndgameMoveBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdvancedMoveBenchmark {
+	@Param({ "early", "mid" })
+	public String position;
+
+	@Param({ "8", "10", "12" })
+	public int depth;
+
+	private Engine engine;
+
+	@Setup(Level.Trial)
+	public void load() {
+		engine = Engine.load();
+	}
+
+	// every move starts from an empty table and a new CPU; a move takes
+	// milliseconds, so setting up each one doesn't skew the timing
+	@Setup(Level.Invocation)
+	public void setUp() {
+		engine.setUpAdvancedMove(position.equals("early") ? Engine.EARLY : Engine.MID, depth);
+	}
+
+	@Benchmark
+	public int advancedMove() {
+		return engine.advancedMove();
+	}
+}
@@ -0,0 +1,52 @@
+package connectfour.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Making moves on the game's board and on the search's bitboard
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+	// spaces on the board, the moves it takes to fill it
+	private static final int SPACES = 42;
+
+	private Engine engine;
+
+	@Setup(Level.Trial)
+	public void load() {
+		engine = Engine.load();
+	}
+
+	// moves per microsecond, emptying the board included
+	@Benchmark
+	@OperationsPerInvocation(SPACES)
+	public long gameModelMakeMove() {
+		return engine.gameModelMakeMove();
+	}
+
+	// positions per microsecond, each move of a position placed and taken
+	// back
+	@Benchmark
+	@OperationsPerInvocation(Engine.POSITION_COUNT)
+	public long bitBoardMakeUndo() {
+		return engine.bitBoardMakeUndo();
+	}
+}
@@ -0,0 +1,45 @@
+package connectfour.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A full Advanced move from a cold table for the late position of the
+ * benchmark game, which has few enough empty spaces that the endgame solver
+ * plays it whatever the search depth
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndgameMoveBenchmark {
+	private Engine engine;
+
+	@Setup(Level.Trial)
+	public void load() {
+		engine = Engine.load();
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		engine.setUpAdvancedMove(Engine.LATE, 8);
+	}
+
+	@Benchmark
+	public int advancedMove() {
+		return engine.advancedMove();
+	}
+}
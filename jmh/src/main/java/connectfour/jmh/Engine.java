@@ -0,0 +1,93 @@
+package connectfour.jmh;
+
+/**
+ * The parts of the game the benchmarks measure. JMH needs benchmarks to be
+ * in a package, and code in a package can't name the game's classes, which
+ * are in the default package, so the benchmarks call the game through this
+ * interface. It is implemented by BenchmarkEngine, in the default package,
+ * which is loaded by name.
+ *
+ * Every method that works on positions goes through the same seeded random
+ * positions, one from each of POSITION_COUNT random games, and returns a
+ * value made from its results so that the work can't be left out.
+ */
+public interface Engine {
+	/**
+	 * Number of random positions
+	 */
+	int POSITION_COUNT = 4096;
+
+	/**
+	 * Pieces of the benchmark game played before its early, middle and late
+	 * positions
+	 */
+	int EARLY = 4;
+	int MID = 14;
+	int LATE = 26;
+
+	/**
+	 * Gets ready for one Advanced move: an empty table and a new CPU
+	 * without the opening book or solved positions, searching to the given
+	 * depth with no time budget
+	 *
+	 * @param moves
+	 *            pieces of the benchmark game to play first
+	 * @param depth
+	 *            search depth
+	 */
+	void setUpAdvancedMove(int moves, int depth);
+
+	/**
+	 * @return the Advanced CPU's move
+	 */
+	int advancedMove();
+
+	/**
+	 * Counts up the evaluation of every position from scratch
+	 */
+	long evaluateFromScratch();
+
+	/**
+	 * Places each legal move of every position on its evaluation, reads the
+	 * score and takes the move back, the search's hot path
+	 */
+	long evaluateIncremental();
+
+	/**
+	 * Checks every position for a win of either player on the bitboards
+	 */
+	long winBitboard();
+
+	/**
+	 * Checks every position's top piece for a win on the GameModel board,
+	 * the check GameController.checkLastMoveWin makes
+	 */
+	long winLastMove();
+
+	/**
+	 * Checks every position's GameModel board for a win of either player,
+	 * the check GameController.checkWin makes
+	 */
+	long winWholeBoard();
+
+	/**
+	 * Empties a GameModel and fills its board column by column
+	 */
+	long gameModelMakeMove();
+
+	/**
+	 * Places and takes back each legal move of every position on a bitboard
+	 */
+	long bitBoardMakeUndo();
+
+	/**
+	 * @return a new BenchmarkEngine
+	 */
+	static Engine load() {
+		try {
+			return (Engine) Class.forName("BenchmarkEngine").newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("BenchmarkEngine is missing from the class path", e);
+		}
+	}
+}
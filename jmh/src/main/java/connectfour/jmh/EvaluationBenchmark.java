@@ -0,0 +1,49 @@
+package connectfour.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The evaluation the search scores its leaves with, in positions per
+ * microsecond
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+	private Engine engine;
+
+	@Setup(Level.Trial)
+	public void load() {
+		engine = Engine.load();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Engine.POSITION_COUNT)
+	public long evaluateFromScratch() {
+		return engine.evaluateFromScratch();
+	}
+
+	// every legal move of a position is one operation of the search's hot
+	// path, but JMH counts whole positions
+	@Benchmark
+	@OperationsPerInvocation(Engine.POSITION_COUNT)
+	public long evaluateIncremental() {
+		return engine.evaluateIncremental();
+	}
+}
@@ -0,0 +1,52 @@
+package connectfour.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The three ways of checking for a win, in positions per microsecond
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesBenchmark {
+	private Engine engine;
+
+	@Setup(Level.Trial)
+	public void load() {
+		engine = Engine.load();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Engine.POSITION_COUNT)
+	public long winBitboard() {
+		return engine.winBitboard();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Engine.POSITION_COUNT)
+	public long winLastMove() {
+		return engine.winLastMove();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Engine.POSITION_COUNT)
+	public long winWholeBoard() {
+		return engine.winWholeBoard();
+	}
+}
@@ -0,0 +1,503 @@
+import java.util.Random;
+
+/**
+ * A compact Connect Four position used by the CPU search. The board is stored
+ * as two bitboards: one holding the pieces of the player whose turn it is and
+ * one holding every occupied space. Each column takes seven bits (six spaces
+ * and one bit of padding on top) so that moves, legality checks and win
+ * detection can all be done with shifts and masks instead of array scans.
+ *
+ * Bit layout (bit index = column * 7 + height, height 0 is the bottom row):
+ *
+ * <pre>
+ *  6 13 20 27 34 41 48   &lt;- padding
+ *  5 12 19 26 33 40 47
+ *  4 11 18 25 32 39 46
+ *  3 10 17 24 31 38 45
+ *  2  9 16 23 30 37 44
+ *  1  8 15 22 29 36 43
+ *  0  7 14 21 28 35 42
+ * </pre>
+ *
+ * Every position also carries a Zobrist hash that is updated as moves are
+ * made, which the search uses to key its transposition table, and the hash
+ * of its mirror image. A position and its mirror are worth the same, with
+ * every column c played as COLUMNS - 1 - c, so caches are keyed on the
+ * canonical hash or key, the smaller of the two, and store columns as seen
+ * from the canonical side (see isMirrored and mirrorColumn).
+ */
+public class BitBoard {
+	public static final int ROWS = 6;
+	public static final int COLUMNS = 7;
+
+	/**
+	 * Columns from the center out. Center columns take part in the most
+	 * sequences of four, so they are usually the best moves and are tried
+	 * first by the search, the endgame solver and the ponderer.
+	 */
+	public static final int[] COLUMN_ORDER = { 3, 2, 4, 1, 5, 0, 6 };
+	private static final int H1 = ROWS + 1;
+	private static final long BOTTOM_MASK = bottomMask();
+	private static final long BOARD_MASK = BOTTOM_MASK * ((1L << ROWS) - 1);
+
+	// random keys for a piece of the first or second player on each square;
+	// seeded so that hashes are the same from one run to the next
+	private static final long[][] ZOBRIST = zobristKeys(20171120L);
+
+	// the same keys for the mirrored square, so the mirror's hash is kept
+	// up to date as cheaply as the hash itself
+	private static final long[][] MIRROR_ZOBRIST = mirror(ZOBRIST);
+
+	private long current;
+	private long mask;
+	private int moves;
+	private long hash;
+	private long mirrorHash;
+
+	/**
+	 * Creates a new empty position
+	 */
+	public BitBoard() {
+		this.current = 0;
+		this.mask = 0;
+		this.moves = 0;
+		this.hash = 0;
+		this.mirrorHash = 0;
+	}
+
+	/**
+	 * Copy constructor
+	 *
+	 * @param board
+	 *            BitBoard object to copy
+	 */
+	public BitBoard(BitBoard board) {
+		this.current = board.current;
+		this.mask = board.mask;
+		this.moves = board.moves;
+		this.hash = board.hash;
+		this.mirrorHash = board.mirrorHash;
+	}
+
+	/**
+	 * Creates a position from the 2d array of chars used by GameModel (row 0
+	 * is the top of the board)
+	 *
+	 * @param board
+	 *            2d array of chars that is the board
+	 * @param toMove
+	 *            color of the player whose turn it is
+	 */
+	public BitBoard(char[][] board, char toMove) {
+		for (int i = 0; i < ROWS; i++) {
+			for (int j = 0; j < COLUMNS; j++) {
+				if (board[i][j] != 0) {
+					long bit = cellBit(i, j);
+					mask |= bit;
+					moves++;
+
+					if (board[i][j] == toMove) {
+						current |= bit;
+					}
+				}
+			}
+		}
+
+		// pieces of the player to move were all placed on moves of the same
+		// parity as the current move number
+		for (int k = 0; k < COLUMNS * H1; k++) {
+			long bit = 1L << k;
+			if ((mask & bit) != 0) {
+				int player = ((current & bit) != 0) ? (moves & 1) : (moves & 1) ^ 1;
+				hash ^= ZOBRIST[player][k];
+				mirrorHash ^= MIRROR_ZOBRIST[player][k];
+			}
+		}
+	}
+
+	/**
+	 * Places a token of the player whose turn it is in the first available
+	 * space in the provided column and passes the turn to the other player
+	 *
+	 * @param column
+	 *            column of move
+	 * @return true if move was made and false otherwise
+	 */
+	public boolean placeMove(int column) {
+		if (!isLegalMove(column)) {
+			return false;
+		}
+
+		long move = (mask + bottomMask(column)) & columnMask(column);
+		int index = Long.numberOfTrailingZeros(move);
+		hash ^= ZOBRIST[moves & 1][index];
+		mirrorHash ^= MIRROR_ZOBRIST[moves & 1][index];
+		current ^= mask;
+		mask |= move;
+		moves++;
+		return true;
+	}
+
+	/**
+	 * Takes back the last move, which must have been made in the provided
+	 * column, and passes the turn back to the player who made it
+	 *
+	 * @param column
+	 *            column of the move to take back
+	 */
+	public void undoMove(int column) {
+		long move = Long.highestOneBit(mask & columnMask(column));
+		mask ^= move;
+		current ^= mask;
+		moves--;
+		int index = Long.numberOfTrailingZeros(move);
+		hash ^= ZOBRIST[moves & 1][index];
+		mirrorHash ^= MIRROR_ZOBRIST[moves & 1][index];
+	}
+
+	/**
+	 * Makes this position a copy of another one without allocating
+	 *
+	 * @param board
+	 *            BitBoard object to copy
+	 */
+	public void set(BitBoard board) {
+		this.current = board.current;
+		this.mask = board.mask;
+		this.moves = board.moves;
+		this.hash = board.hash;
+		this.mirrorHash = board.mirrorHash;
+	}
+
+	/**
+	 * Bit index of the space that a piece dropped in the column would fill
+	 *
+	 * @param column
+	 *            column of move
+	 * @return index of the space in the bit layout
+	 */
+	public int getMoveIndex(int column) {
+		return Long.numberOfTrailingZeros((mask + bottomMask(column)) & columnMask(column));
+	}
+
+	/**
+	 * Makes sure there is room for a move in the specified column
+	 *
+	 * @param column
+	 *            column to check for space in
+	 * @return true if there is at least one available space in the
+	 *         specified column
+	 */
+	public boolean isLegalMove(int column) {
+		return (mask & topMask(column)) == 0;
+	}
+
+	/**
+	 * Check to determine if there are any available spaces left in the board
+	 *
+	 * @return true if the board is full and false if spaces are available
+	 */
+	public boolean boardIsFull() {
+		return mask == BOARD_MASK;
+	}
+
+	/**
+	 * Checks whether the player whose turn it is has a sequence of four
+	 *
+	 * @return true if the player to move has a sequence of 4
+	 */
+	public boolean currentPlayerHasWon() {
+		return Rules.isWin(current);
+	}
+
+	/**
+	 * Checks whether the player who made the last move has a sequence of four
+	 *
+	 * @return true if the player who just moved has a sequence of 4
+	 */
+	public boolean lastPlayerHasWon() {
+		return Rules.isWin(current ^ mask);
+	}
+
+	/**
+	 * @return the space a piece dropped in each column that is not full
+	 *         would fill
+	 */
+	public long possibleMoves() {
+		return (mask + BOTTOM_MASK) & BOARD_MASK;
+	}
+
+	/**
+	 * @return true if the player to move can win with their next piece
+	 */
+	public boolean canWinNext() {
+		return (winningSpaces(current, mask) & possibleMoves()) != 0;
+	}
+
+	/**
+	 * Finds the moves of the player to move that don't let the other player
+	 * win with their next piece. If the other player threatens to win in
+	 * two places at once, there are none. Should only be used when the player
+	 * to move can't win with their next piece.
+	 *
+	 * @return spaces of the moves that don't lose right away
+	 */
+	public long nonLosingMoves() {
+		long possible = possibleMoves();
+		long opponentWin = winningSpaces(current ^ mask, mask);
+		long forced = possible & opponentWin;
+
+		if (forced != 0) {
+			if ((forced & (forced - 1)) != 0) {
+				return 0;
+			}
+			possible = forced;
+		}
+
+		// don't play directly below a space the other player wins on
+		return possible & ~(opponentWin >> 1);
+	}
+
+	/**
+	 * Counts the empty spaces that would complete a sequence of four for the
+	 * player to move if they placed a piece on the given space
+	 *
+	 * @param move
+	 *            bit of the space, one of possibleMoves
+	 * @return number of winning spaces after the move
+	 */
+	public int countWinningSpaces(long move) {
+		return Long.bitCount(winningSpaces(current | move, mask | move));
+	}
+
+	/**
+	 * @return pieces of the player whose turn it is
+	 */
+	public long getCurrent() {
+		return current;
+	}
+
+	/**
+	 * @return pieces of the player who made the last move
+	 */
+	public long getOpponent() {
+		return current ^ mask;
+	}
+
+	/**
+	 * @return every occupied space on the board
+	 */
+	public long getMask() {
+		return mask;
+	}
+
+	/**
+	 * @return number of pieces on the board
+	 */
+	public int getMoves() {
+		return moves;
+	}
+
+	/**
+	 * @return Zobrist hash of the position
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Key that identifies the position exactly. Adding the mask to the pieces
+	 * of the player to move sets one extra bit above each column, so no two
+	 * positions share a key. Unlike the hash it is the same in every build,
+	 * which makes it suitable for storing positions in files.
+	 *
+	 * @return unique key of the position
+	 */
+	public long getKey() {
+		return current + mask;
+	}
+
+	/**
+	 * Hash shared by the position and its mirror image: the smaller of the
+	 * two Zobrist hashes
+	 *
+	 * @return canonical Zobrist hash of the position
+	 */
+	public long getCanonicalHash() {
+		return Math.min(hash, mirrorHash);
+	}
+
+	/**
+	 * Tells whether the canonical hash is the mirror's, in which case columns
+	 * stored under it have to go through mirrorColumn
+	 *
+	 * @return true if the mirror image's hash is the canonical one
+	 */
+	public boolean isMirrored() {
+		return mirrorHash < hash;
+	}
+
+	/**
+	 * Translates a column between this position and the side its canonical
+	 * hash belongs to. Mirroring twice gives back the same column, so the
+	 * same call works in both directions.
+	 *
+	 * @param column
+	 *            column index, or -1 for none
+	 * @return the column on the other side, or -1 for none
+	 */
+	public int canonicalColumn(int column) {
+		return (column >= 0 && isMirrored()) ? mirrorColumn(column) : column;
+	}
+
+	/**
+	 * Key shared by the position and its mirror image: the smaller of
+	 * getKey and the key of the mirror
+	 *
+	 * @return canonical key of the position
+	 */
+	public long getCanonicalKey() {
+		long key = getKey();
+		return Math.min(key, mirrorKey(key));
+	}
+
+	/**
+	 * Tells whether the canonical key is the mirror's, in which case columns
+	 * stored under it have to go through mirrorColumn
+	 *
+	 * @return true if the mirror image's key is the canonical one
+	 */
+	public boolean isKeyMirrored() {
+		long key = getKey();
+		return mirrorKey(key) < key;
+	}
+
+	/**
+	 * Key of the mirror image of a position, found by reversing the order of
+	 * its columns
+	 *
+	 * @param key
+	 *            key from getKey
+	 * @return key of the mirrored position
+	 */
+	public static long mirrorKey(long key) {
+		long mirrored = 0;
+		for (int column = 0; column < COLUMNS; column++) {
+			mirrored |= ((key >>> (column * H1)) & ((1L << H1) - 1)) << ((COLUMNS - 1 - column) * H1);
+		}
+		return mirrored;
+	}
+
+	/**
+	 * @param column
+	 *            column index
+	 * @return the same column on the mirrored board
+	 */
+	public static int mirrorColumn(int column) {
+		return COLUMNS - 1 - column;
+	}
+
+	/**
+	 * Bit of the space at the given row and column, using the GameModel
+	 * convention where row 0 is the top of the board
+	 *
+	 * @param row
+	 *            space row
+	 * @param column
+	 *            space column
+	 * @return single bit for the space
+	 */
+	public static long cellBit(int row, int column) {
+		return 1L << (column * H1 + (ROWS - 1 - row));
+	}
+
+	private static long topMask(int column) {
+		return 1L << (ROWS - 1 + column * H1);
+	}
+
+	private static long bottomMask(int column) {
+		return 1L << (column * H1);
+	}
+
+	/**
+	 * @param column
+	 *            column index
+	 * @return bits of every space in the column
+	 */
+	public static long columnMask(int column) {
+		return ((1L << ROWS) - 1) << (column * H1);
+	}
+
+	/**
+	 * Empty spaces that would complete a sequence of four for the given
+	 * pieces, whether or not a piece can be dropped there yet
+	 */
+	private static long winningSpaces(long pieces, long mask) {
+		// vertical
+		long r = (pieces << 1) & (pieces << 2) & (pieces << 3);
+
+		// horizontal and both diagonals: the space can be at either end of
+		// the sequence or one of the two spaces in the middle
+		for (int shift = H1 - 1; shift <= H1 + 1; shift++) {
+			long p = (pieces << shift) & (pieces << (2 * shift));
+			r |= p & (pieces << (3 * shift));
+			r |= p & (pieces >> shift);
+			p = (pieces >> shift) & (pieces >> (2 * shift));
+			r |= p & (pieces << shift);
+			r |= p & (pieces >> (3 * shift));
+		}
+
+		return r & (BOARD_MASK ^ mask);
+	}
+
+	private static long[][] zobristKeys(long seed) {
+		Random rand = new Random(seed);
+		long[][] keys = new long[2][COLUMNS * H1];
+		for (int i = 0; i < keys.length; i++) {
+			for (int j = 0; j < keys[i].length; j++) {
+				keys[i][j] = rand.nextLong();
+			}
+		}
+		return keys;
+	}
+
+	private static long[][] mirror(long[][] keys) {
+		long[][] mirrored = new long[keys.length][COLUMNS * H1];
+		for (int i = 0; i < keys.length; i++) {
+			for (int j = 0; j < mirrored[i].length; j++) {
+				mirrored[i][j] = keys[i][mirrorColumn(j / H1) * H1 + j % H1];
+			}
+		}
+		return mirrored;
+	}
+
+	private static long bottomMask() {
+		long bottom = 0;
+		for (int i = 0; i < COLUMNS; i++) {
+			bottom |= bottomMask(i);
+		}
+		return bottom;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		long other = current ^ mask;
+
+		for (int i = 0; i < ROWS; i++) {
+			for (int j = 0; j < COLUMNS; j++) {
+				long bit = cellBit(i, j);
+				sb.append((current & bit) != 0 ? 'X' : (other & bit) != 0 ? 'O' : '.');
+				sb.append(' ');
+			}
+			sb.append('\n');
+		}
+
+		return sb.toString();
+	}
+}
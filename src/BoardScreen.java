@@ -5,6 +5,8 @@ import java.awt.Font;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 import javax.swing.BorderFactory;
 import javax.swing.Icon;
@@ -13,6 +15,7 @@ import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 /**
  * BoardScreen is used to provide a visual representation of a Connect Four game board.
@@ -48,6 +51,7 @@ public class BoardScreen extends JPanel implements ActionListener {
 	private JLabel winLabel;
 	private JLabel lossLabel;
 	private JLabel tieLabel;
+	private CompletableFuture<Integer> cpuMove; // the CPU's move while it is thinking, null otherwise
 	
 
 	/**
@@ -307,6 +311,8 @@ public class BoardScreen extends JPanel implements ActionListener {
 	 */
 	public void resetGUIBoard(){
 		
+		cancelCPUMove();
+		
 		// enable any previously disabled buttons
 		for(int i = 0; i < columns; i++) {
 			columnButtons[i].setEnabled(true);
@@ -357,6 +363,8 @@ public class BoardScreen extends JPanel implements ActionListener {
 		int confirmation = JOptionPane.showConfirmDialog(null, "Are you sure you want to exit?", "Exit", JOptionPane.YES_NO_OPTION);
 
 		if(confirmation == JOptionPane.YES_OPTION) {
+			cancelCPUMove();
+			controller.abandonGame();
 			gameFrame.boardScreenToStatsScreen();
 		}
 	}
@@ -410,7 +418,8 @@ public class BoardScreen extends JPanel implements ActionListener {
 	
 	
 	/**
-	 * Makes player's game piece placement as well as the CPU player's corresponding opposing placement.
+	 * Makes player's game piece placement and starts the CPU player's search for its opposing placement. The search
+	 * runs in the background so the board stays responsive; the column buttons are disabled until it is done.
 	 * @param source of the user button input.
 	 */
 	private void boardAction(ActionEvent e) {
@@ -425,9 +434,7 @@ public class BoardScreen extends JPanel implements ActionListener {
 		}
 		
 		// drop piece in column and update game board if move is valid
-		space[row][column].fill(controller.getPlayerColor());
-		controller.placeMove(column, controller.getPlayerColor());
-		boolean playerWin = controller.checkWin(controller.getGameModel().getBoard(), controller.getPlayerColor());
+		boolean playerWin = applyMove(row, column, controller.getPlayerColor(), "Player");
 		
 		// check for player win
 		if(playerWin) {
@@ -435,22 +442,49 @@ public class BoardScreen extends JPanel implements ActionListener {
 			return;
 		}
 		
-		// check to see if column is full after player placement
-		if(controller.columnIsFull(column)) {
-			columnButtons[column].setEnabled(false);
+		// check to see if there is a tie, leaving the CPU no move
+		if(controller.boardIsFull()) {
+			tieAction();
+			return;
 		}
 		
-		// get AI's desired column drop position based on selected mode
-		CPU cpu = new CPU(controller.getGameModel(), controller.getMode());
-		
-		//int cpuColumn = CPU.getAIMove(controller.getGameModel(), controller.getMode());
-		int cpuColumn = cpu.getAIMove();
+		// get AI's desired column drop position based on selected mode; the CPU is kept for the whole game and
+		// may already have the move from pondering on the player's time
+		setColumnButtonsEnabled(false);
+		final CompletableFuture<Integer> move = controller.getCPU().getAIMoveAsync();
+		cpuMove = move;
+		move.whenComplete(new BiConsumer<Integer, Throwable>() {
+			public void accept(final Integer cpuColumn, final Throwable error) {
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						// ignore a move that was cancelled by a reset or exit
+						if (move != cpuMove) {
+							return;
+						}
+						cpuMove = null;
+						
+						if (error != null) {
+							error.printStackTrace();
+							setColumnButtonsEnabled(true);
+						} else {
+							cpuMoveAction(cpuColumn);
+						}
+					}
+				});
+			}
+		});
+	}
+	
+	
+	/**
+	 * Makes the CPU player's placement once its search is done and re-enables the column buttons.
+	 * @param cpuColumn the column chosen by the CPU.
+	 */
+	private void cpuMoveAction(int cpuColumn) {
 		int cpuRow = controller.getNextEmptyRow(cpuColumn);
 		
 		// drop piece in column and update game board
-		space[cpuRow][cpuColumn].fill(controller.getCPUColor());
-		controller.placeMove(cpuColumn, controller.getCPUColor());
-		boolean cpuWin = controller.checkWin(controller.getGameModel().getBoard(), controller.getCPUColor());
+		boolean cpuWin = applyMove(cpuRow, cpuColumn, controller.getCPUColor(), "CPU");
 		
 		// check for AI winning move
 		if(cpuWin) {
@@ -464,10 +498,55 @@ public class BoardScreen extends JPanel implements ActionListener {
 			return;
 		}
 		
-		// check to see if the column is full after AI move
-		if(controller.columnIsFull(cpuColumn)) {
-			columnButtons[cpuColumn].setEnabled(false);
-		}	
+		// re-enable the columns that aren't full after AI move
+		setColumnButtonsEnabled(true);
+	}
+	
+	
+	/**
+	 * Drops a piece in a column, on the screen and in the game, and checks whether it won. Each move is recorded as
+	 * a Java Flight Recorder event so time spent on the event thread can be matched with the CPU's searches.
+	 * @param row the row the piece lands in.
+	 * @param column the column the piece is dropped in.
+	 * @param color the color of the piece.
+	 * @param player who made the move, for the recording.
+	 * @return true if the move won the game.
+	 */
+	private boolean applyMove(int row, int column, char color, String player) {
+		Object event = FlightRecorderEvents.get().beginMoveApplied();
+		
+		space[row][column].fill(color);
+		controller.placeMove(column, color);
+		boolean win = controller.checkLastMoveWin();
+		
+		if (event != null) {
+			FlightRecorderEvents.get().commitMoveApplied(event, player, column, row, win);
+		}
+		return win;
+	}
+	
+	
+	/**
+	 * Enables or disables the column drop buttons. Full columns stay disabled.
+	 * @param enabled true to enable the buttons of columns that aren't full, false to disable all of them.
+	 */
+	private void setColumnButtonsEnabled(boolean enabled) {
+		for (int i = 0; i < columns; i++) {
+			columnButtons[i].setEnabled(enabled && !controller.columnIsFull(i));
+		}
+	}
+	
+	
+	/**
+	 * Stops the CPU's search and pondering if it is thinking, so a reset or exit doesn't have to wait for it.
+	 */
+	private void cancelCPUMove() {
+		controller.stopCPU();
+		
+		if (cpuMove != null) {
+			cpuMove.cancel(true);
+			cpuMove = null;
+		}
 	}
 	
 	
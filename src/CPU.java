@@ -1,5 +1,16 @@
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 
@@ -10,546 +21,1047 @@ import java.util.Random;
  *
  */
 public class CPU {
+	private int searchDepth = 8;
+	private long timeBudget = DEFAULT_TIME_BUDGET;
+	private int depthReached;
+	private int lastScore;
+	private int solverThreshold = DEFAULT_SOLVER_THRESHOLD;
+	private EndgameSolver solver;
+	private boolean solved;
+	private int solvedScore;
+	private long deadline;
+	private int parallelism = 1;
+	private ParallelMode parallelMode = ParallelMode.ROOT_SPLIT;
+	private SearchAlgorithm searchAlgorithm = DEFAULT_SEARCH_ALGORITHM;
+	private volatile boolean helpersStopped;
+	private volatile Future<Integer> request;
+	private Search[] searches;
+	private ForkJoinPool pool;
+	private boolean bookMove;
+	private boolean storedMove;
+	private boolean searched;
+	private MonteCarloSearch monteCarlo;
+	private boolean monteCarloMove;
+	private long playoutBudget = DEFAULT_PLAYOUT_BUDGET;
+	private int[] rootScores = new int[0];
+	private SearchStats stats = SearchStats.getDefault();
+	private Ponderer ponderer;
+	private char cpuColor;
+	private char playerColor;
+	private long tableSalt;
+	private boolean cpuMovedFirst;
+	private TranspositionTable table;
+	private OpeningBook openingBook;
+	private SolvedPositionStore solvedPositions;
+	private final int MAX_VALUE = Integer.MAX_VALUE;
+	private final int MIN_VALUE = Integer.MIN_VALUE;
+	private GameModel data;
+	private char mode;
+	private final char beginner = 'B';
+	private final char intermediate = 'I';
+	private final char advanced = 'A';
+	private static final char yellow = 'Y';
+	private static final char red = 'R';
+
 	/**
-	 * A helper class to make the use of the minimax algorithm streamline
-	 * 
-	 * @author Chris Paxton
-	 *
+	 * Default number of milliseconds the Advanced search may take per move
 	 */
-	private class Board {
-		private char[][] b;
-		private int rows;
-		private int columns;
+	public static final long DEFAULT_TIME_BUDGET = 2000;
 
-		/**
-		 * Creates a new board object using a 2d array of chars
-		 * 
-		 * @param b
-		 *            2d array of chars that is the board
-		 */
-		public Board(char[][] b) {
-			this.b = b;
-			this.rows = b.length;
-			this.columns = b[0].length;
-		}
+	/**
+	 * Algorithm the Advanced search uses unless another one is set
+	 */
+	public static final SearchAlgorithm DEFAULT_SEARCH_ALGORITHM = SearchAlgorithm.PVS;
 
-		/**
-		 * Copy constructor
-		 * 
-		 * @param board
-		 *            Board object to copy
-		 */
-		public Board(Board board) {
-			char[][] newBoard = new char[board.rows][board.columns];
-			for (int i = 0; i < board.rows; i++) {
-				newBoard[i] = Arrays.copyOf(board.b[i], board.columns);
-			}
+	/**
+	 * Default number of empty spaces at or below which the Advanced CPU
+	 * solves the position exactly instead of searching it
+	 */
+	public static final int DEFAULT_SOLVER_THRESHOLD = 24;
 
-			this.rows = newBoard.length;
-			this.columns = newBoard[0].length;
-			this.b = newBoard;
+	/**
+	 * Default number of playouts the Monte Carlo search makes per move
+	 */
+	public static final long DEFAULT_PLAYOUT_BUDGET = 200000;
+
+	// number of nodes searched between checks of the clock
+	private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+	// the CPU explains each move it chooses on standard output only when
+	// run with -Dconnectfour.debug=true; the same numbers are always
+	// available through SearchStats and the Flight Recorder events
+	private static final boolean DEBUG = Boolean.getBoolean("connectfour.debug");
+
+	// runs the searches started by getAIMoveAsync one at a time, on a
+	// thread below the priority of the Swing event thread so the board
+	// keeps repainting while the CPU thinks
+	private static final ExecutorService SEARCH_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "CPU search");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
 		}
+	});
 
-		/**
-		 * Places a token of the specified player in the first available space
-		 * in the provided column
-		 * 
-		 * @param column
-		 *            column of move
-		 * @param player
-		 *            players token color
-		 * @return true if move was made and false otherwise
-		 */
-		public boolean placeMove(int column, char player) {
-			if (!isLegalMove(column)) {
-				return false;
-			}
+	// deepest possible search, one ply for every space on the board
+	private static final int MAX_PLY = BitBoard.ROWS * BitBoard.COLUMNS + 1;
 
-			for (int i = rows - 1; i >= 0; i--) {
+	// center-out order that prefers the right side, used by half of the
+	// Lazy SMP helpers so they don't all walk the tree in the same order
+	private static final int[] MIRRORED_COLUMN_ORDER = { 3, 4, 2, 5, 1, 6, 0 };
 
-				if (b[i][column] == 0) {
-					b[i][column] = player;
-					return true;
-				}
-			}
+	// ordering scores for the hash move and killer moves, above any history
+	// score
+	private static final int HASH_MOVE_SCORE = Integer.MAX_VALUE;
+	private static final int KILLER_SCORE = Integer.MAX_VALUE - 2;
 
-			return false;
-		}
+	// half the width of the window the root is first searched with around
+	// the expected score, the worth of two open runs of two
+	private static final int ASPIRATION_WINDOW = 400;
+
+	// mixed into table keys when the CPU made the first move of the game so
+	// that scores stored from the CPU's point of view are never shared
+	// between a position and the same position with the roles swapped
+	private static final long CPU_MOVED_FIRST = 0x9E3779B97F4A7C15L;
 
+	/**
+	 * Ways of using more than one thread for the Advanced search
+	 */
+	public enum ParallelMode {
 		/**
-		 * w Checks tthe board to determine if then specified player has a
-		 * sequence of four or not
-		 * 
-		 * @param player
-		 *            player color to check for win
-		 * @return true if player has a sequence of 4 and false otherwise
+		 * The moves of the root are searched in parallel
 		 */
-		public boolean detectWin(char player) {
-			// check for a horizontal win
-			for (int i = 0; i < rows; i++) {
-				for (int j = 0; j < columns - 3; j++) {
-					if (b[i][j] == player && b[i][j + 1] == player && b[i][j + 2] == player && b[i][j + 3] == player) {
-						return true;
-					}
-				}
-			}
-
-			// check for a vertical win
-			for (int i = 0; i < rows - 3; i++) {
-				for (int j = 0; j < columns; j++) {
-					if (b[i][j] == player && b[i + 1][j] == player && b[i + 2][j] == player && b[i + 3][j] == player) {
-						return true;
-					}
-				}
-			}
+		ROOT_SPLIT,
 
-			// check for ascending diagonal win
-			for (int i = 3; i < rows; i++) {
-				for (int j = 0; j < columns - 3; j++) {
-					if (b[i][j] == player && b[i - 1][j + 1] == player && b[i - 2][j + 2] == player
-							&& b[i - 3][j + 3] == player) {
-						return true;
-					}
-				}
-			}
-
-			// check for descending diagonal win
-			for (int i = 3; i < rows; i++) {
-				for (int j = 3; j < columns; j++) {
-					if (b[i][j] == player && b[i - 1][j - 1] == player && b[i - 2][j - 2] == player
-							&& b[i - 3][j - 3] == player) {
-						return true;
-					}
-				}
-			}
-			// no win has been found if code execution gets here
-			return false;
-		}
+		/**
+		 * Helper threads run the same iterative deepening search at
+		 * staggered depths, sharing results through the transposition table
+		 */
+		LAZY_SMP
+	}
 
+	/**
+	 * Algorithms the Advanced search can use to search the tree
+	 */
+	public enum SearchAlgorithm {
 		/**
-		 * Check to determine if there are any available spaces left in the
-		 * board
-		 * 
-		 * @return true if spaces are available and false if board is full
+		 * Minimax with alpha-beta pruning, every move searched with the
+		 * full window
 		 */
-		public boolean boardIsFull() {
-			for (int i = 0; i < columns; i++) {
-				if (b[0][i] == 0) {
-					return false;
-				}
-			}
+		ALPHA_BETA,
 
-			return true;
-		}
+		/**
+		 * Principal variation search: the first move of a node is searched
+		 * with the full window and the others with a null window that only
+		 * proves they are no better, searching again only if one is. Each
+		 * iteration at the root starts with an aspiration window around the
+		 * previous iteration's score.
+		 */
+		PVS,
 
 		/**
-		 * Makes sure there is room for a move in the spacified column
-		 * 
-		 * @param column
-		 *            column to ckeck for space in
-		 * @return true if there is at least one available space in the
-		 *         specified column
+		 * MTD(f): the root is searched only with null windows, each one
+		 * proving the score is above or below a guess, until the bounds
+		 * meet. The bounds found by earlier passes are kept in the
+		 * transposition table, so each pass mostly repeats cheap lookups.
 		 */
-		public boolean isLegalMove(int column) {
-			return b[0][column] == 0;
-		}
+		MTDF,
 
 		/**
-		 * Determines the favorability of the current board state (node) and
-		 * returnes the score of the board's state
-		 * 
-		 * @return board favorability score
+		 * Monte Carlo tree search (see MonteCarloSearch) in place of
+		 * minimax, limited by the playout budget as well as the time budget.
+		 * It uses neither the opening book nor the endgame solver, so it
+		 * can be compared with the minimax search on its own.
 		 */
-		public int nodeScore() {
-			// Evaluates the favorableness of the current board for the CPU by
-			// checking the number of sequences and weighing then accordingly
-			// //System.out.println(cpuColor);
-			int boardFavorabilityScore = 0;
-
-			for (int i = 0; i < rows; i++) {
-				for (int j = 0; j < columns; j++) {
-					if (b[i][j] == 0 || b[i][j] == playerColor) {
-						// skip space if CPU does not occupy
-						continue;
-
-					} else if (b[i][j] == cpuColor) {
-
-						boardFavorabilityScore += horizontalSequenceScore(i, j);
-						boardFavorabilityScore += verticalSequenceScore(i, j);
-						boardFavorabilityScore += leftDiagonalSequanceScore(i, j);
-						boardFavorabilityScore += rightDiagonalSequenceScore(i, j);
-					}
+		MCTS
+	}
 
-				}
-			}
-			return boardFavorabilityScore;
+	/**
+	 * Creates a new CPU for the current game (GameModel data) and a character
+	 * specifying the difficulty
+	 * 
+	 * @param data
+	 * @param mode
+	 */
+	public CPU(GameModel data, char mode) {
+		this(data, mode, null);
+	}
 
-		}
+	/**
+	 * Creates a new CPU that remembers searched positions in the given
+	 * transposition table, so the table can be kept between moves of a game
+	 * 
+	 * @param data
+	 * @param mode
+	 * @param table
+	 *            table of searched positions, or null to create one when it
+	 *            is first needed
+	 */
+	public CPU(GameModel data, char mode, TranspositionTable table) {
+		this.data = data;
+		this.mode = mode;
+		this.cpuColor = data.getCPUColor();
+		this.playerColor = data.getPlayerColor();
+		this.table = table;
+		this.openingBook = OpeningBook.getDefault();
+		this.solvedPositions = SolvedPositionStore.getDefault();
+	}
 
-		/**
-		 * Checks the board for sequences (CPU tokens in a row) vertically in
-		 * every space and returns the score
-		 * 
-		 * @param i
-		 *            space row
-		 * @param j
-		 *            space column
-		 * @return score of vertical sequence favorability
-		 */
-		private int verticalSequenceScore(int i, int j) {
-			// check vertical sequence of 4 from space (i, j)
+	/**
+	 * Sets the maximum number of moves the Advanced search looks ahead
+	 * 
+	 * @param searchDepth
+	 *            deepest iteration of the minimax search
+	 */
+	public void setSearchDepth(int searchDepth) {
+		this.searchDepth = searchDepth;
+	}
 
-			int numCpuInSequence = 0;
-			int remainingSpacesinSequence = 0;
+	/**
+	 * Sets how long the Advanced search may take for one move. The search
+	 * always finishes at least a one move deep search, so a move is returned
+	 * even if the budget is very small.
+	 * 
+	 * @param millis
+	 *            time budget in milliseconds, or 0 for no limit
+	 */
+	public void setTimeBudget(long millis) {
+		this.timeBudget = millis;
+	}
 
-			if (i < 3) {
+	/**
+	 * Sets how many threads the Advanced search uses. With more than one
+	 * thread the moves of the root are searched in parallel after the first
+	 * (best ordered) one, which still gives the same column as searching them
+	 * one at a time.
+	 * 
+	 * @param threads
+	 *            number of threads to search with
+	 */
+	public void setParallelism(int threads) {
+		this.parallelism = Math.max(1, threads);
+	}
 
-				for (int k = 0; k < 4; k++) {
-					if (b[i + k][j] == cpuColor) {
-						numCpuInSequence++;
+	/**
+	 * Sets how the Advanced search uses its threads when the parallelism is
+	 * more than one
+	 * 
+	 * @param parallelMode
+	 *            ROOT_SPLIT or LAZY_SMP
+	 */
+	public void setParallelMode(ParallelMode parallelMode) {
+		this.parallelMode = parallelMode;
+	}
 
-					} else if (b[i + k][j] == 0) {
-						remainingSpacesinSequence++;
+	/**
+	 * Sets the algorithm the Advanced search uses
+	 * 
+	 * @param searchAlgorithm
+	 *            ALPHA_BETA, PVS or MTDF
+	 */
+	public void setSearchAlgorithm(SearchAlgorithm searchAlgorithm) {
+		this.searchAlgorithm = searchAlgorithm;
+	}
 
-					} else {
-						numCpuInSequence = 0;
-						remainingSpacesinSequence = 0;
-						break;
+	/**
+	 * Sets the book of opening moves the Advanced search looks positions up
+	 * in before searching them. By default the book in
+	 * OpeningBook.DEFAULT_FILE is used if there is one.
+	 * 
+	 * @param openingBook
+	 *            book to use, or null to always search
+	 */
+	public void setOpeningBook(OpeningBook openingBook) {
+		this.openingBook = openingBook;
+	}
 
-					}
-				}
-			} else {
+	/**
+	 * Sets how empty the board must be for the Advanced CPU to play
+	 * perfectly. Once this many spaces or fewer are left, the position is
+	 * searched to the end of the game with an EndgameSolver instead of with
+	 * the depth limited minimax search. If the solver runs out of time the
+	 * minimax search is used after all.
+	 * 
+	 * @param emptySpaces
+	 *            number of empty spaces to start solving at, or 0 to never
+	 *            solve
+	 */
+	public void setSolverThreshold(int emptySpaces) {
+		this.solverThreshold = emptySpaces;
+	}
 
-				for (int k = 0; k < 4; k++) {
-					if (b[i - k][j] == cpuColor) {
-						numCpuInSequence++;
+	/**
+	 * Sets where the Advanced CPU keeps the positions it has solved. A
+	 * position found there is not solved again. By default the store opened
+	 * by SolvedPositionStore.openDefault is used if there is one.
+	 * 
+	 * @param solvedPositions
+	 *            store to use, or null to always solve
+	 */
+	public void setSolvedPositionStore(SolvedPositionStore solvedPositions) {
+		this.solvedPositions = solvedPositions;
+	}
 
-					} else if (b[i - k][j] == 0) {
-						remainingSpacesinSequence++;
+	/**
+	 * Sets how many playouts the Monte Carlo search may make for one move.
+	 * The time budget still applies, and whichever runs out first ends the
+	 * search.
+	 * 
+	 * @param playouts
+	 *            playouts per move
+	 */
+	public void setPlayoutBudget(long playouts) {
+		this.playoutBudget = playouts;
+	}
 
-					} else {
-						numCpuInSequence = 0;
-						remainingSpacesinSequence = 0;
-						break;
+	/**
+	 * @return number of playouts the Monte Carlo search made for the most
+	 *         recent move, or 0 if it wasn't used
+	 */
+	public long getPlayouts() {
+		return (monteCarloMove) ? monteCarlo.getPlayouts() : 0;
+	}
 
-					}
-				}
-			}
+	/**
+	 * @return true if the most recent move was found by the endgame solver,
+	 *         so its score is proven rather than estimated
+	 */
+	public boolean isSolved() {
+		return solved;
+	}
 
-			if (numCpuInSequence > 0) {
-				return sequenceWeight(numCpuInSequence, remainingSpacesinSequence);
+	/**
+	 * Score of the most recent move from the endgame solver, from the CPU's
+	 * point of view. It is positive if the CPU wins with perfect play, 0 for
+	 * a draw and negative if the CPU loses; the further from 0, the sooner
+	 * the game is over. Only meaningful if isSolved is true.
+	 * 
+	 * @return proven result of the game
+	 */
+	public int getSolvedScore() {
+		return solvedScore;
+	}
 
-			}
+	/**
+	 * Sets where the CPU reports each move it chooses
+	 * 
+	 * @param stats
+	 *            statistics to add the CPU's moves to, or null to keep none
+	 */
+	public void setSearchStats(SearchStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * @return statistics the CPU adds its moves to, or null if it keeps none
+	 */
+	public SearchStats getSearchStats() {
+		return stats;
+	}
+
+	/**
+	 * @return true if the most recent move was taken from the opening book
+	 */
+	public boolean isBookMove() {
+		return bookMove;
+	}
+
+	/**
+	 * @return true if the most recent move was solved in an earlier search
+	 *         and read from the solved position store. isSolved is true as
+	 *         well.
+	 */
+	public boolean isStoredMove() {
+		return storedMove;
+	}
+
+	/**
+	 * @return number of nodes visited by the most recent search
+	 */
+	public long getNodesSearched() {
+		if (storedMove) {
 			return 0;
+		} else if (solved) {
+			return solver.getNodes();
+		} else if (monteCarloMove) {
+			return monteCarlo.getPlies();
+		} else if (!searched) {
+			return 0;
+		}
+		long nodes = 0;
+		if (searches != null) {
+			for (Search s : searches) {
+				nodes += s.nodes;
+			}
 		}
+		return nodes;
+	}
 
-		/**
-		 * Checks the board for sequences (CPU tokens in a row) horizontally in
-		 * every space and returns the score
-		 * 
-		 * @param i
-		 *            space row
-		 * @param j
-		 *            space column
-		 * @return score of horizontal sequence favorability
-		 */
-		private int horizontalSequenceScore(int i, int j) {
-			// check horizontal sequence of 4 from space (i, j)
+	/**
+	 * @return number of null window searches of the root the MTD(f)
+	 *         algorithm made in the most recent search, or 0 if another
+	 *         algorithm was used
+	 */
+	public int getPasses() {
+		return (searched) ? searches[0].passes : 0;
+	}
 
-			int numCpuInSequence = 0;
-			int remainingSpacesinSequence = 0;
+	/**
+	 * @return number of leaf positions scored by the most recent search
+	 */
+	public long getEvaluations() {
+		long evaluations = 0;
+		if (searched) {
+			for (Search s : searches) {
+				evaluations += s.evaluator.getEvaluations();
+			}
+		}
+		return evaluations;
+	}
 
-			if (j > 3) {
-				for (int k = 0; k < 4; k++) {
-					if (b[i][j - k] == cpuColor) {
-						numCpuInSequence++;
+	/**
+	 * @return number of moves that caused a beta cutoff in the most recent
+	 *         search
+	 */
+	public long getBetaCutoffs() {
+		long betaCutoffs = 0;
+		if (searched) {
+			for (Search s : searches) {
+				betaCutoffs += s.betaCutoffs;
+			}
+		}
+		return betaCutoffs;
+	}
 
-					} else if (b[i][j - k] == 0) {
-						remainingSpacesinSequence++;
+	/**
+	 * @return number of beta cutoffs in the most recent search that were
+	 *         caused by the first move searched
+	 */
+	public long getFirstMoveCutoffs() {
+		long firstMoveCutoffs = 0;
+		if (searched) {
+			for (Search s : searches) {
+				firstMoveCutoffs += s.firstMoveCutoffs;
+			}
+		}
+		return firstMoveCutoffs;
+	}
 
-					} else {
-						numCpuInSequence = 0;
-						remainingSpacesinSequence = 0;
-						break;
+	/**
+	 * @return score of each column at the root in the last completed
+	 *         iteration of the most recent search, or Integer.MIN_VALUE for
+	 *         columns that were not searched. Only the chosen column's score
+	 *         is exact; the others may be bounds.
+	 */
+	public int[] getRootScores() {
+		return rootScores.clone();
+	}
 
-					}
-				}
-			} else {
-				for (int k = 0; k < 4; k++) {
-					if (b[i][j + k] == cpuColor) {
-						numCpuInSequence++;
+	/**
+	 * @return transposition table the CPU searches with, or null if it
+	 *         hasn't searched yet
+	 */
+	public TranspositionTable getTranspositionTable() {
+		return table;
+	}
 
-					} else if (b[i][j + k] == 0) {
-						remainingSpacesinSequence++;
+	/**
+	 * @return depth of the last completed iteration of the most recent search
+	 */
+	public int getDepthReached() {
+		return depthReached;
+	}
 
-					} else {
-						numCpuInSequence = 0;
-						remainingSpacesinSequence = 0;
-						break;
+	/**
+	 * @return score of the column chosen by the most recent search, from the
+	 *         CPU's point of view
+	 */
+	public int getScore() {
+		return lastScore;
+	}
 
-					}
-				}
-			}
+	/**
+	 * Sets whether the CPU ponders: after each of its moves it searches its
+	 * replies to the player's possible moves (see Ponderer) until the
+	 * player moves, and getAIMoveAsync then hands out the reply to the move
+	 * that was made. Pondering needs the CPU to be told about moves with
+	 * movePlayed.
+	 * 
+	 * @param pondering
+	 *            true to ponder on the player's time
+	 */
+	public void setPondering(boolean pondering) {
+		if (pondering && ponderer == null) {
+			ponderer = new Ponderer(this);
+		} else if (!pondering && ponderer != null) {
+			ponderer.cancel();
+			ponderer = null;
+		}
+	}
 
-			if (numCpuInSequence > 0) {
-				return sequenceWeight(numCpuInSequence, remainingSpacesinSequence);
+	/**
+	 * Tells the CPU that a move was made in its game, by either player. A
+	 * CPU that is kept for a whole game is told about every move, so after
+	 * its own moves it can start pondering. Should be called from the thread
+	 * that plays the game, after the move is made on the GameModel.
+	 * 
+	 * @param column
+	 *            column of the move
+	 */
+	public void movePlayed(int column) {
+		char[][] board = data.getBoard();
+		if (ponderer == null || mode == beginner || board[data.getLastMoveRow()][column] != cpuColor) {
+			return;
+		}
 
+		// no reason to ponder if the CPU's move ended the game
+		BitBoard b = new BitBoard(board, playerColor);
+		if (!b.lastPlayerHasWon() && !b.boardIsFull()) {
+			if (table == null) {
+				table = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
 			}
+			ponderer.start(data);
+		}
+	}
 
-			return 0;
+	/**
+	 * Creates a CPU for another position of this CPU's game, such as one of
+	 * the positions the Ponderer searches. It has all of this CPU's
+	 * settings: the difficulty, search depth, time budget, threads and how
+	 * they are used, search algorithm, solver threshold, opening book,
+	 * solved position store and playout budget. It searches with this CPU's
+	 * transposition table and threads, and its Monte Carlo search starts
+	 * from this CPU's tree.
+	 * 
+	 * @param data
+	 *            the game in the position to search, with the same colors
+	 *            as this CPU's game
+	 * @return the new CPU
+	 */
+	CPU copy(GameModel data) {
+		CPU copy = new CPU(data, mode, table);
+		copy.searchDepth = searchDepth;
+		copy.timeBudget = timeBudget;
+		copy.parallelism = parallelism;
+		copy.parallelMode = parallelMode;
+		copy.searchAlgorithm = searchAlgorithm;
+		copy.solverThreshold = solverThreshold;
+		copy.openingBook = openingBook;
+		copy.solvedPositions = solvedPositions;
+		copy.playoutBudget = playoutBudget;
+		if (parallelism > 1) {
+			copy.pool = getPool();
+		}
+		if (monteCarlo != null) {
+			copy.getMonteCarloSearch().shareTree(monteCarlo);
 		}
+		return copy;
+	}
 
-		/**
-		 * Checks the board for sequences (CPU tokens in a row) diagonally to
-		 * the left in every space and returns the score
-		 * 
-		 * @param i
-		 *            space row
-		 * @param j
-		 *            space column
-		 * @return score of left diagonal sequence favorability
-		 */
-		private int leftDiagonalSequanceScore(int i, int j) {
-			// check left diagonal sequence of 4 from space (i, j)
+	/**
+	 * Takes over a move that a copy of this CPU (see copy) chose and that
+	 * was played in this CPU's game. The move counts in this CPU's
+	 * statistics as if this CPU had searched it, and the next Monte Carlo
+	 * search here starts from the copy's tree.
+	 * 
+	 * @param copy
+	 *            CPU that is done searching
+	 */
+	void ponderedMovePlayed(CPU copy) {
+		if (stats != null && copy.stats != null) {
+			stats.add(copy.stats);
+		}
+		if (copy.monteCarlo != null) {
+			getMonteCarloSearch().shareTree(copy.monteCarlo);
+		}
+	}
+
+	/**
+	 * Tells the CPU that its game was reset or abandoned, which stops any
+	 * pondering. Positions kept in the transposition table stay, since they
+	 * are just as valid in a new game.
+	 */
+	public void newGame() {
+		if (ponderer != null) {
+			ponderer.cancel();
+		}
+	}
 
-			int numCpuInSequence = 0;
-			int remainingSpacesinSequence = 0;
+	/**
+	 * Based on the difficulty and the respective algorithm, return the column
+	 * that the CPU will place a move in the current game
+	 * 
+	 * @return column index of next CPU move
+	 */
+	public int getAIMove() {
+		Object event = FlightRecorderEvents.get().beginCpuMoveSearch();
+		long start = System.nanoTime();
+		solved = false;
+		bookMove = false;
+		storedMove = false;
+		searched = false;
+		monteCarloMove = false;
+		depthReached = 0;
+		lastScore = 0;
+		rootScores = new int[0];
+		int column;
 
-			if (j > 3) {
-				if (i > 3) {
-					for (int k = 0; k < 4 && (j > 2 && i < 3); k++) {
-						if (b[i + k][j - k] == cpuColor) {
-							numCpuInSequence++;
+		if (mode == beginner) {
+			column = getBeginnerCPUMove();
 
-						} else if (b[i - k][j - k] == 0) {
-							remainingSpacesinSequence++;
+		} else if (mode == intermediate) {
+			column = getIntermediateCPUMove();
 
-						} else {
-							numCpuInSequence = 0;
-							remainingSpacesinSequence = 0;
-							break;
+		} else if (mode == advanced) {
+			column = getAdvancedAIMove();
 
-						}
-					}
+		}
+		// use a beginner mode by default
+		else {
+			column = getBeginnerCPUMove();
+		}
 
-				} else {
-					for (int k = 0; k < 4 && (j > 2 && i < 3); k++) {
-						if (b[i + k][j - k] == cpuColor) {
-							numCpuInSequence++;
+		// a cancelled search's move is never played
+		if (isCancelled()) {
+			return column;
+		}
+		if (stats != null) {
+			stats.moveFinished(this, mode, column, System.nanoTime() - start);
+		}
+		if (event != null) {
+			FlightRecorderEvents.get().commitCpuMoveSearch(event, this, mode, data.getBoard(), column);
+		}
+		return column;
+	}
 
-						} else if (b[i + k][j - k] == 0) {
-							remainingSpacesinSequence++;
+	/**
+	 * Starts finding the CPU's move on a background thread, so the caller
+	 * (usually the Swing event thread) isn't blocked while the CPU thinks.
+	 * Cancelling the returned future stops the search within a few
+	 * thousand nodes. The board must not change until the move is done or
+	 * cancelled.
+	 * 
+	 * @return column index of next CPU move, once the search is done
+	 */
+	public CompletableFuture<Integer> getAIMoveAsync() {
+		CompletableFuture<Integer> reply = (ponderer != null) ? ponderer.take(data) : null;
+		if (reply != null) {
+			return reply;
+		}
 
-						} else {
-							numCpuInSequence = 0;
-							remainingSpacesinSequence = 0;
-							break;
+		final CompletableFuture<Integer> move = new CompletableFuture<Integer>();
 
-						}
-					}
+		SEARCH_EXECUTOR.execute(new Runnable() {
+			public void run() {
+				if (move.isCancelled()) {
+					return;
+				}
+				request = move;
+				try {
+					move.complete(getAIMove());
+				} catch (Throwable t) {
+					move.completeExceptionally(t);
+				} finally {
+					request = null;
 				}
-			} else {
-				return 0;
-			}
-
-			if (numCpuInSequence > 0) {
-				return sequenceWeight(numCpuInSequence, remainingSpacesinSequence);
 			}
-			return 0;
-		}
-
-		/**
-		 * Checks the board for sequences (CPU tokens in a row) diagonally to
-		 * the right in every space and returns the score
-		 * 
-		 * @param i
-		 *            space row
-		 * @param j
-		 *            space column
-		 * @return score of right diegonal sequence favorability
-		 */
-		private int rightDiagonalSequenceScore(int i, int j) {
-			// check right diagonal sequence
-			int numCpuInSequence = 0;
-			int remainingSpacesinSequence = 0;
+		});
+		return move;
+	}
 
-			if (j < 3) {
-				if (i > 2) {
-					for (int k = 0; k < 4; k++) {
-						if (b[i - k][j + k] == cpuColor) {
-							numCpuInSequence++;
+	/**
+	 * @return true if the move being searched for was asked for with
+	 *         getAIMoveAsync and has since been cancelled
+	 */
+	private boolean isCancelled() {
+		Future<Integer> r = request;
+		return r != null && r.isCancelled();
+	}
 
-						} else if (b[i - k][j + k] == 0) {
-							remainingSpacesinSequence++;
+	/**
+	 * If the game mode is Intermediate, return a Beginner move 30% of the time
+	 * and an advances move 70% of the time
+	 * 
+	 * @return column index of next CPU move
+	 */
+	private int getIntermediateCPUMove() {
+		int column;
+		Random rand = new Random();
+		float chance = rand.nextFloat();
 
-						} else {
-							numCpuInSequence = 0;
-							remainingSpacesinSequence = 0;
-							break;
+		if (chance < 0.3) {
+			column = getBeginnerCPUMove();
+			if (DEBUG) {
+				System.out.println("Beginer Move");
+			}
+		} else {
+			column = getAdvancedAIMove();
+			if (DEBUG) {
+				System.out.println("Advanced Move");
+			}
+		}
+		return column;
+	}
 
-						}
-					}
-				} else {
-					for (int k = 0; k < 4; k++) {
-						if (b[i + k][j + k] == cpuColor) {
-							numCpuInSequence++;
+	/**
+	 * If the game mode is Advanced, using the minimax algorithm determine the
+	 * most favorable move for the CPU based on the current board. The search
+	 * is deepened one move at a time until the maximum depth is reached or
+	 * the time budget runs out, and the column from the deepest completed
+	 * iteration is returned. Positions in the opening book are not searched,
+	 * and positions with few enough empty spaces are solved exactly.
+	 * 
+	 * @return column index of next CPU move
+	 */
+	private int getAdvancedAIMove() {
+		final BitBoard b = new BitBoard(data.getBoard(), cpuColor);
+		if (searchAlgorithm == SearchAlgorithm.MCTS) {
+			return getMonteCarloMove(b);
+		}
 
-						} else if (b[i + k][j + k] == 0) {
-							remainingSpacesinSequence++;
+		if (openingBook != null && b.getMoves() < openingBook.getPlies()) {
+			int entry = openingBook.find(b.getCanonicalKey());
+			if (entry >= 0) {
+				int column = openingBook.getColumn(entry);
+				if (b.isKeyMirrored()) {
+					column = BitBoard.mirrorColumn(column);
+				}
+				bookMove = true;
+				depthReached = openingBook.getDepth();
+				lastScore = openingBook.getScore(entry);
+				if (DEBUG) {
+					System.out.println("Book move: column " + column + " score " + lastScore);
+				}
+				return column;
+			}
+		}
 
-						} else {
-							numCpuInSequence = 0;
-							remainingSpacesinSequence = 0;
-							break;
+		if (table == null) {
+			table = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
+		}
+		table.newSearch();
+		table.resetCounters();
+		cpuMovedFirst = b.getMoves() % 2 == 0;
+		tableSalt = (cpuMovedFirst) ? CPU_MOVED_FIRST : 0;
+		long start = System.nanoTime();
+		deadline = (timeBudget > 0) ? start + timeBudget * 1000000L : Long.MAX_VALUE;
+
+		int emptySpaces = BitBoard.ROWS * BitBoard.COLUMNS - b.getMoves();
+		if (emptySpaces <= solverThreshold) {
+			int stored = (solvedPositions != null) ? solvedPositions.find(b) : 0;
+			if (stored != 0) {
+				solved = true;
+				storedMove = true;
+				solvedScore = SolvedPositionStore.getScore(stored);
+				depthReached = emptySpaces;
+				lastScore = toSearchScore(solvedScore);
+				if (DEBUG) {
+					System.out.println("Stored solution: column " + SolvedPositionStore.getColumn(stored) + " score "
+							+ solvedScore);
+				}
+				return SolvedPositionStore.getColumn(stored);
+			}
 
-						}
+			if (solver == null) {
+				solver = new EndgameSolver(table) {
+					@Override
+					protected boolean shouldStop() {
+						return isCancelled() || super.shouldStop();
 					}
+				};
+			}
+			solver.setDeadline(deadline);
+			int score = solver.solve(b);
+
+			if (!solver.isAborted()) {
+				solved = true;
+				solvedScore = score;
+				depthReached = emptySpaces;
+				lastScore = toSearchScore(score);
+				if (solvedPositions != null) {
+					solvedPositions.store(b, score, solver.getBestColumn());
+				}
+				if (DEBUG) {
+					System.out.println("Solved: column " + solver.getBestColumn() + " score " + score + " in "
+							+ solver.getNodes() + " nodes after " + (System.nanoTime() - start) / 1000000 + " ms ("
+							+ table + ")");
 				}
+				return solver.getBestColumn();
 			}
+			if (DEBUG) {
+				System.out.println("Solver ran out of time after " + solver.getNodes() + " nodes");
+			}
+		}
 
-			if (numCpuInSequence > 0) {
-				return sequenceWeight(numCpuInSequence, remainingSpacesinSequence);
+		boolean rootSplit = parallelism > 1 && parallelMode == ParallelMode.ROOT_SPLIT;
+		boolean lazySmp = parallelism > 1 && parallelMode == ParallelMode.LAZY_SMP;
+		// the searches are kept from move to move so a CPU kept for a whole
+		// game doesn't allocate them again
+		int searchCount = (rootSplit) ? BitBoard.COLUMNS : parallelism;
+		if (searches == null || searches.length != searchCount) {
+			searches = new Search[searchCount];
+			for (int i = 0; i < searches.length; i++) {
+				searches[i] = new Search();
 			}
-			return 0;
 		}
-
-		/**
-		 * @param cpuSpaces
-		 *            number of spaces that the cpu occupies in a given run of
-		 *            four spaces
-		 * @param emptySpaces
-		 *            number of available spaces in a given run of four spaces
-		 * @return score of sequence
-		 */
-		private int sequenceWeight(int cpuSpaces, int emptySpaces) {
-			// gives a score to a sequence based on the number of spaces the cpu
-			// occupies. using double instead of int because there wont be
-			// decimals and casting
-			// reduces readability a bit
-
-			return (int) (emptySpaces * Math.pow(10, cpuSpaces)) + movesRemaining();
+		for (Search s : searches) {
+			s.reset();
+			s.helper = false;
+			s.sharedAlpha = null;
+			s.columnOrder = BitBoard.COLUMN_ORDER;
 		}
 
-		/**
-		 * Number of moves remaining in the game
-		 * 
-		 * @return count of empty spaces in the board
-		 */
-		private int movesRemaining() {
-			int count = 0;
-			for (int i = 0; i < rows; i++) {
-				for (int j = 0; j < columns; j++) {
-					if (b[i][j] == 0) {
-						count++;
+		searched = true;
+
+		ForkJoinPool pool = (parallelism > 1) ? getPool() : null;
+		List<ForkJoinTask<?>> helpers = new ArrayList<ForkJoinTask<?>>();
+		Search main = searches[0];
+		int bestColumn = -1;
+
+		if (lazySmp) {
+			helpersStopped = false;
+			for (int i = 1; i < searches.length; i++) {
+				final Search helper = searches[i];
+				helper.setPosition(b);
+				final int firstDepth = 1 + i % 2;
+				helper.helper = true;
+				helper.columnOrder = (i % 4 < 2) ? MIRRORED_COLUMN_ORDER : BitBoard.COLUMN_ORDER;
+				helpers.add(pool.submit(new Runnable() {
+					public void run() {
+						helper.searchAsHelper(firstDepth);
 					}
-				}
+				}));
 			}
-			// System.out.println(count);
-			return count;
 		}
 
-		/*
-		 * (non-Javadoc)
-		 * 
-		 * @see java.lang.Object#toString()
-		 */
-		@Override
-		public String toString() {
-			for (int i = 0; i < rows; i++) {
-				for (int j = 0; j < columns; j++) {
-					System.out.print(b[i][j] + " ");
+		try {
+			// scores of the last two iterations; the evaluation favors the
+			// player who moved last, so the score two iterations back is
+			// the better guess
+			int[] scores = new int[2];
+			// root scores of the last completed iteration, copied rather
+			// than cloned so that deeper searches don't allocate more
+			int[] completedRootScores = new int[BitBoard.COLUMNS];
+			for (int depth = 1; depth <= searchDepth; depth++) {
+				int score;
+				if (rootSplit && depth > 1) {
+					score = searchRootInParallel(pool, b, depth);
+				} else if (searchAlgorithm == SearchAlgorithm.PVS && depth > 2) {
+					score = main.searchWithAspiration(b, depth, scores[depth % 2]);
+				} else if (searchAlgorithm == SearchAlgorithm.MTDF) {
+					score = main.searchWithMtdf(b, depth, scores[depth % 2]);
+				} else {
+					main.rootDepth = depth;
+					main.setPosition(b);
+					score = main.minimax(main.position, depth, MIN_VALUE, MAX_VALUE, true);
+				}
+
+				if (main.aborted) {
+					// keep the column from the last completed iteration
+					break;
+				}
+
+				bestColumn = main.nextMoveColumn;
+				depthReached = depth;
+				lastScore = score;
+				System.arraycopy(main.rootScores, 0, completedRootScores, 0, BitBoard.COLUMNS);
+				rootScores = completedRootScores;
+				scores[depth % 2] = score;
+				if (DEBUG) {
+					System.out.println("Depth " + depth + ": column " + bestColumn + " score " + score + " after "
+							+ (System.nanoTime() - start) / 1000000 + " ms");
 				}
-				System.out.println();
-			}
 
-			return "";
+				if (score >= MAX_VALUE / 2 || score <= MIN_VALUE / 2) {
+					// the game is decided, searching deeper can't change the
+					// result
+					break;
+				}
+			}
+		} finally {
+			// the main search's result is the one used, so stop the helpers
+			helpersStopped = true;
+			for (ForkJoinTask<?> helper : helpers) {
+				helper.quietlyJoin();
+			}
 		}
 
+		if (DEBUG) {
+			long elapsed = Math.max(1, System.nanoTime() - start);
+			long betaCutoffs = getBetaCutoffs();
+			long firstMoveCutoffs = getFirstMoveCutoffs();
+			System.out.println("Searched " + getNodesSearched() + " nodes to depth " + depthReached + " ("
+					+ getNodesSearched() * 1000000000L / elapsed + " nodes/s), first-move cutoff rate "
+					+ ((betaCutoffs > 0) ? (double) firstMoveCutoffs / betaCutoffs : 0)
+					+ ((main.passes > 0) ? ", " + main.passes + " MTD(f) passes" : "") + " (" + table + ")");
+		}
+		return bestColumn;
 	}
 
-	private int searchDepth = 8;
-	private char cpuColor;
-	private char playerColor;
-	private int nextMoveColumn = -1;
-	private final int MAX_VALUE = Integer.MAX_VALUE;
-	private final int MIN_VALUE = Integer.MIN_VALUE;
-	private GameModel data;
-	private char mode;
-	private final char beginner = 'B';
-	private final char intermediate = 'I';
-	private final char advanced = 'A';
-	private static final char yellow = 'Y';
-	private static final char red = 'R';
-
 	/**
-	 * Creates a new CPU for the current game (GameModel data) and a character
-	 * specifying the difficulty
+	 * Converts an endgame solver score to the scale of the minimax search,
+	 * where wins and losses are beyond any heuristic score
 	 * 
-	 * @param data
-	 * @param mode
+	 * @param solvedScore
+	 *            score from the EndgameSolver
+	 * @return the same result as a minimax score
 	 */
-	public CPU(GameModel data, char mode) {
-		this.data = data;
-		this.mode = mode;
-		this.cpuColor = data.getCPUColor();
-		this.playerColor = data.getPlayerColor();
+	private int toSearchScore(int solvedScore) {
+		return (solvedScore > 0) ? MAX_VALUE / 2 + solvedScore : (solvedScore < 0) ? MIN_VALUE / 2 + solvedScore : 0;
 	}
 
 	/**
-	 * Based on the difficulty and the respective algorithm, return the column
-	 * that the CPU will place a move in the current game
+	 * Finds the Advanced move with a Monte Carlo tree search on as many
+	 * threads as the parallelism, keeping the tree for the next move. The
+	 * score is the win rate of the playouts through the chosen column,
+	 * scaled from -1000 (all lost) to 1000 (all won).
 	 * 
+	 * @param b
+	 *            root Board node
 	 * @return column index of next CPU move
 	 */
-	public int getAIMove() {
-
-		if (mode == beginner) {
-			return getBeginnerCPUMove();
-
-		} else if (mode == intermediate) {
-			return getIntermediateCPUMove();
-
-		} else if (mode == advanced) {
-			return getAdvancedAIMove();
+	private int getMonteCarloMove(BitBoard b) {
+		MonteCarloSearch monteCarlo = getMonteCarloSearch();
+
+		long start = System.nanoTime();
+		monteCarlo.setDeadline((timeBudget > 0) ? start + timeBudget * 1000000L : Long.MAX_VALUE);
+		monteCarlo.setPlayoutBudget(playoutBudget);
+		int column = monteCarlo.search(b, (parallelism > 1) ? getPool() : null);
+
+		monteCarloMove = true;
+		depthReached = monteCarlo.getDepth();
+		lastScore = (int) Math.round((monteCarlo.getWinRate() - 0.5) * 2000);
+		if (DEBUG) {
+			long elapsed = Math.max(1, System.nanoTime() - start);
+			System.out.println("MCTS: column " + column + " win rate " + monteCarlo.getWinRate() + " after "
+					+ monteCarlo.getPlayouts() + " playouts (" + monteCarlo.getPlayouts() * 1000000000L / elapsed
+					+ " playouts/s), " + monteCarlo.getReusedVisits() + " reused, " + monteCarlo.getNodeCount()
+					+ " nodes in the tree");
+		}
+		return column;
+	}
 
+	/**
+	 * @return the Monte Carlo search, kept with its tree from move to move
+	 */
+	private MonteCarloSearch getMonteCarloSearch() {
+		if (monteCarlo == null) {
+			monteCarlo = new MonteCarloSearch() {
+				@Override
+				protected boolean shouldStop() {
+					return isCancelled() || super.shouldStop();
+				}
+			};
 		}
-		// use a beginner mode by default
-		else {
-			return getBeginnerCPUMove();
+		return monteCarlo;
+	}
+
+	/**
+	 * @return the threads that the Advanced search runs on, kept from move to
+	 *         move as long as the parallelism doesn't change
+	 */
+	private ForkJoinPool getPool() {
+		if (pool == null || pool.getParallelism() != parallelism) {
+			if (pool != null) {
+				pool.shutdown();
+			}
+			pool = new ForkJoinPool(parallelism);
 		}
+		return pool;
 	}
 
 	/**
-	 * If the game mode is Intermediate, return a Beginner move 30% of the time
-	 * and an advances move 70% of the time
+	 * Searches the root node with its moves split across threads. The first
+	 * move in the ordering is searched alone to get a score to beat, then the
+	 * other moves are searched in parallel, each on its own copy of the board,
+	 * sharing the best score found so far as their alpha bound. Every node of
+	 * those searches reads the shared bound again, so a better score found by
+	 * one thread cuts off the others' subtrees at once.
 	 * 
-	 * @return column index of next CPU move
+	 * @param pool
+	 *            threads to search on
+	 * @param b
+	 *            root Board node
+	 * @param depth
+	 *            depth of the search
+	 * @return score of the root node
 	 */
-	private int getIntermediateCPUMove() {
-		int column;
-		Random rand = new Random();
-		float chance = rand.nextFloat();
+	private int searchRootInParallel(ForkJoinPool pool, final BitBoard b, final int depth) {
+		Search main = searches[0];
+		main.rootDepth = depth;
+		long entry = table.probe(b.getCanonicalHash() ^ tableSalt);
+		int hashMove = (entry != 0) ? b.canonicalColumn(TranspositionTable.getColumn(entry)) : -1;
+		int moveCount = main.orderMoves(b, 0, hashMove, 0, rootMoves(b));
+		final int[] columns = Arrays.copyOf(main.moveLists[0], moveCount);
+		final int[] scores = new int[moveCount];
+
+		scores[0] = main.searchRootMove(b, columns[0], depth, MIN_VALUE);
+		if (main.aborted) {
+			return 0;
+		}
 
-		if (chance < 0.3) {
-			column = getBeginnerCPUMove();
-			System.out.println("Beginer Move");
-		} else {
-			column = getAdvancedAIMove();
-			System.out.println("Advanced Move");
+		// the shared bound is kept one below the best score so that a later
+		// move that ties the best still gets an exact score, which lets the
+		// tie be broken by move order exactly like the sequential search
+		final AtomicInteger alpha = new AtomicInteger(scores[0]);
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+
+		for (int k = 1; k < moveCount; k++) {
+			final int index = k;
+			final Search helper = searches[k];
+			helper.sharedAlpha = alpha;
+			tasks.add(new Callable<Integer>() {
+				public Integer call() {
+					int score = helper.searchRootMove(b, columns[index], depth, alpha.get() - 1);
+					scores[index] = score;
+					alpha.accumulateAndGet(score, Math::max);
+					return score;
+				}
+			});
 		}
-		return column;
+
+		pool.invokeAll(tasks);
+
+		for (int k = 1; k < moveCount; k++) {
+			if (searches[k].aborted) {
+				main.aborted = true;
+			}
+		}
+		if (main.aborted) {
+			return 0;
+		}
+
+		int best = 0;
+		Arrays.fill(main.rootScores, MIN_VALUE);
+		for (int k = 0; k < moveCount; k++) {
+			if (DEBUG) {
+				System.out.println("Score for location " + columns[k] + " = " + scores[k]);
+			}
+			main.rootScores[columns[k]] = scores[k];
+			if (scores[k] > scores[best]) {
+				best = k;
+			}
+		}
+
+		main.nextMoveColumn = columns[best];
+		table.store(b.getCanonicalHash() ^ tableSalt, scores[best], TranspositionTable.EXACT, depth,
+				b.canonicalColumn(columns[best]));
+		return scores[best];
 	}
 
 	/**
-	 * If the game mode is Advanced, using the minimax algorithm determine the
-	 * most favorable move for the CPU based on the current board
+	 * Finds the moves worth searching at the root: the moves that don't let
+	 * the player win at once, or every legal move if the CPU can win at once
+	 * or loses whatever it plays
 	 * 
-	 * @return column index of next CPU move
+	 * @param b
+	 *            root Board node
+	 * @return spaces of the root moves
 	 */
-	private int getAdvancedAIMove() {
-		Board b = new Board(data.getBoard());
-		minimax(b, searchDepth, MIN_VALUE, MAX_VALUE, true);
-		return nextMoveColumn;
+	private static long rootMoves(BitBoard b) {
+		long moves = (b.canWinNext()) ? 0 : b.nonLosingMoves();
+		return (moves != 0) ? moves : b.possibleMoves();
 	}
 
 	/**
@@ -587,47 +1099,366 @@ public class CPU {
 	}
 
 	/**
-	 * Using the Minimax algorithm, recursively traverse all possible future
-	 * game states for the number of moves (spacified by the depth) and find the
-	 * column that will be most favorable for the CPU to make its next moves.
-	 * Alpha-beta pruning improves the preformance of the minimax algorithm by
-	 * reducing the number of nodes that need to be traversed
-	 * 
-	 * @param b
-	 *            Board node that is being analyzed
-	 * @param depth
-	 *            depth of recursive tree search
-	 * @param alpha
-	 *            min score that the CPU has for all possible future moves
-	 * @param beta
-	 *            max score that the CPU has for all possible future moves moves
-	 * @param maximizingPlayer
-	 * @return
-	 */
-	private int minimax(Board b, int depth, int alpha, int beta, boolean maximizingPlayer) {
-		if (depth == 0) {
-			return b.nodeScore();
-
-		} else if (b.detectWin((maximizingPlayer) ? cpuColor : playerColor)) {
-			return (maximizingPlayer) ? MAX_VALUE / 2 : MIN_VALUE / 2;
-
-		} else if (b.boardIsFull()) {
-			return 0;
+	 * The state of one minimax search: its node counters, move ordering
+	 * tables, per-ply move lists and the position it searches. Every thread
+	 * searching for the CPU uses its own Search so that none of this is shared
+	 * between threads. The position and its evaluation are changed in place
+	 * with makeMove and undoMove and everything else is allocated up front, so
+	 * searching a node allocates nothing.
+	 */
+	private class Search {
+		private long nodes;
+		private long betaCutoffs;
+		private long firstMoveCutoffs;
+		private int passes;
+		private int rootDepth;
+		private int nextMoveColumn = -1;
+		private boolean aborted;
+		private boolean helper;
+		// best score found by any thread of a root split, while this search
+		// is one of its root moves
+		private AtomicInteger sharedAlpha;
+		private int[] columnOrder = BitBoard.COLUMN_ORDER;
+		private BitBoard position = new BitBoard();
+		private LineEvaluator evaluator = new LineEvaluator();
+		private int[][] moveLists = new int[MAX_PLY][BitBoard.COLUMNS];
+		private int[][] moveScores = new int[MAX_PLY][BitBoard.COLUMNS];
+		private int[][] killers = new int[MAX_PLY][2];
+		private int[][] history = new int[2][BitBoard.COLUMNS * (BitBoard.ROWS + 1)];
+		private int[] rootScores = new int[BitBoard.COLUMNS];
+
+		/**
+		 * Prepares the search for a new CPU move. Killer moves and history
+		 * scores are forgotten too: carried over from the previous move they
+		 * ordered worse than the hash moves alone.
+		 */
+		public void reset() {
+			nodes = 0;
+			betaCutoffs = 0;
+			firstMoveCutoffs = 0;
+			passes = 0;
+			aborted = false;
+			evaluator.resetEvaluations();
+			clearMoveOrdering();
+		}
+
+		/**
+		 * Runs a Lazy SMP helper: the same iterative deepening as the main
+		 * search starting at the given depth, until the time runs out or the
+		 * main search finishes. Its results reach the main search only
+		 * through the transposition table. The helper's position must already
+		 * be set to the root.
+		 * 
+		 * @param firstDepth
+		 *            depth of the first iteration
+		 */
+		public void searchAsHelper(int firstDepth) {
+			for (int depth = firstDepth; depth <= searchDepth && !aborted; depth++) {
+				rootDepth = depth;
+				minimax(position, depth, MIN_VALUE, MAX_VALUE, true);
+			}
+		}
+
+		/**
+		 * Sets the position to search and counts up its evaluation
+		 * 
+		 * @param b
+		 *            root Board node
+		 */
+		public void setPosition(BitBoard b) {
+			position.set(b);
+			evaluator.set(position);
+		}
+
+		/**
+		 * Places a piece for the player to move and updates the evaluation
+		 * 
+		 * @param b
+		 *            Board node to change, the search's position
+		 * @param column
+		 *            column of move
+		 */
+		private void makeMove(BitBoard b, int column) {
+			evaluator.add(b.getMoveIndex(column), b.getMoves() & 1);
+			b.placeMove(column);
 		}
 
-		int result;
-		int bestMoveScore = Integer.MIN_VALUE;
+		/**
+		 * Takes back the last move and updates the evaluation
+		 * 
+		 * @param b
+		 *            Board node to change, the search's position
+		 * @param column
+		 *            column of the move to take back
+		 */
+		private void undoMove(BitBoard b, int column) {
+			b.undoMove(column);
+			evaluator.remove(b.getMoveIndex(column), b.getMoves() & 1);
+		}
+
+		/**
+		 * Determines the favorability of the current board state (node) for
+		 * the CPU from the incrementally kept evaluation
+		 * 
+		 * @return board favorability score
+		 */
+		private int nodeScore() {
+			return (cpuMovedFirst) ? evaluator.getScore() : -evaluator.getScore();
+		}
+
+		/**
+		 * Checks whether this search has to stop, either because the move was
+		 * cancelled, because the time budget is used up or because it is a
+		 * helper and the main search is done. The first iteration of the main
+		 * search is only stopped by cancelling.
+		 * 
+		 * @return true if the search has to stop
+		 */
+		private boolean shouldStop() {
+			return (helper && helpersStopped) || (rootDepth > 1 && System.nanoTime() > deadline) || isCancelled();
+		}
+
+		/**
+		 * Searches the root with a narrow window around the score of the
+		 * previous iteration, which cuts off more of the tree than the full
+		 * window if the score hasn't changed much. If the score falls outside
+		 * the window, that side of the window is opened up and the root is
+		 * searched again.
+		 * 
+		 * @param b
+		 *            root Board node
+		 * @param depth
+		 *            depth of the search
+		 * @param guess
+		 *            score of the previous iteration
+		 * @return score of the root node
+		 */
+		public int searchWithAspiration(BitBoard b, int depth, int guess) {
+			int alpha = Math.max(MIN_VALUE, guess - ASPIRATION_WINDOW);
+			int beta = Math.min(MAX_VALUE, guess + ASPIRATION_WINDOW);
+			rootDepth = depth;
+
+			while (true) {
+				setPosition(b);
+				int score = minimax(position, depth, alpha, beta, true);
+
+				if (aborted) {
+					return 0;
+				} else if (score <= alpha && alpha > MIN_VALUE) {
+					alpha = MIN_VALUE;
+				} else if (score >= beta && beta < MAX_VALUE) {
+					beta = MAX_VALUE;
+				} else {
+					return score;
+				}
+			}
+		}
+
+		/**
+		 * Finds the score of the root with MTD(f), a series of null window
+		 * searches. Each pass tells whether the score is at least beta or
+		 * below it, and the next pass tests the score that came back, until
+		 * the lower and upper bounds meet. The column is taken from the last
+		 * pass that failed high, the one that proved the final lower bound.
+		 * 
+		 * @param b
+		 *            root Board node
+		 * @param depth
+		 *            depth of the search
+		 * @param guess
+		 *            expected score, the closer the fewer passes
+		 * @return score of the root node
+		 */
+		public int searchWithMtdf(BitBoard b, int depth, int guess) {
+			int score = guess;
+			int lower = MIN_VALUE;
+			int upper = MAX_VALUE;
+			int column = -1;
+			rootDepth = depth;
+
+			while (lower < upper) {
+				int beta = (score == lower) ? score + 1 : score;
+				setPosition(b);
+				score = minimax(position, depth, beta - 1, beta, true);
+				passes++;
+
+				if (aborted) {
+					return 0;
+				}
+				if (score < beta) {
+					upper = score;
+				} else {
+					lower = score;
+					column = nextMoveColumn;
+				}
+			}
+
+			nextMoveColumn = column;
+			return score;
+		}
+
+		/**
+		 * Searches a single move of the root node
+		 * 
+		 * @param b
+		 *            root Board node
+		 * @param column
+		 *            column of the root move
+		 * @param depth
+		 *            depth of the root node
+		 * @param alpha
+		 *            min score that the CPU has for all possible future moves
+		 * @return score of the root move
+		 */
+		public int searchRootMove(BitBoard b, int column, int depth, int alpha) {
+			rootDepth = depth;
+			setPosition(b);
+			makeMove(position, column);
+			return minimax(position, depth - 1, alpha, MAX_VALUE, false);
+		}
+
+		/**
+		 * Using the Minimax algorithm, recursively traverse all possible future
+		 * game states for the number of moves (spacified by the depth) and find the
+		 * column that will be most favorable for the CPU to make its next moves.
+		 * Alpha-beta pruning improves the preformance of the minimax algorithm by
+		 * reducing the number of nodes that need to be traversed, and positions
+		 * that were already searched are looked up in the transposition table
+		 * instead of being searched again. Moves are tried best-first (see
+		 * orderMoves) so that most cutoffs happen on the first move searched.
+		 * With the PVS algorithm, the moves after the first are searched with a
+		 * null window first.
+		 * 
+		 * @param b
+		 *            Board node that is being analyzed
+		 * @param depth
+		 *            depth of recursive tree search
+		 * @param alpha
+		 *            min score that the CPU has for all possible future moves
+		 * @param beta
+		 *            max score that the CPU has for all possible future moves moves
+		 * @param maximizingPlayer
+		 * @return score of the node, or 0 if the time budget ran out and the
+		 *         search was abandoned
+		 */
+		private int minimax(BitBoard b, int depth, int alpha, int beta, boolean maximizingPlayer) {
+			if (++nodes % CLOCK_CHECK_INTERVAL == 0 && shouldStop()) {
+				aborted = true;
+			}
+
+			if (aborted) {
+				return 0;
+
+			} else if (depth == rootDepth - 1 && b.lastPlayerHasWon()) {
+				// only the player who just moved can have made a sequence, and
+				// below the root's moves the threat checks have already
+				// stopped at the node before a win
+				return (maximizingPlayer) ? MIN_VALUE / 2 : MAX_VALUE / 2;
+
+			} else if (depth == 0) {
+				return nodeScore();
+
+			} else if (b.boardIsFull()) {
+				return 0;
+			}
+
+			// threats: a player who can win with their next piece wins, a
+			// player facing two threats loses, and only moves that don't hand
+			// the other player a win are searched. The root keeps every move
+			// when it is won or lost so that a column is still chosen.
+			long candidates;
+			if (depth == rootDepth) {
+				candidates = rootMoves(b);
+			} else if (b.canWinNext()) {
+				return (maximizingPlayer) ? MAX_VALUE / 2 : MIN_VALUE / 2;
+			} else {
+				candidates = b.nonLosingMoves();
+				if (candidates == 0) {
+					return (maximizingPlayer) ? MIN_VALUE / 2 : MAX_VALUE / 2;
+				}
+			}
+
+			// one root move of a root split only has to beat the best score
+			// of the others, which can rise while it is being searched
+			if (sharedAlpha != null) {
+				alpha = Integer.max(alpha, sharedAlpha.get() - 1);
+				if (beta <= alpha) {
+					return alpha;
+				}
+			}
 
-		if (maximizingPlayer) { // maximizing player is the cpu
-			result = MIN_VALUE;
+			// use a stored result if it was searched at least as deep; the root
+			// is always searched so that the next move column gets chosen
+			int ply = rootDepth - depth;
+			int alphaOriginal = alpha;
+			int betaOriginal = beta;
+			// a position and its mirror share an entry, with the column
+			// stored as seen from the canonical side
+			long key = b.getCanonicalHash() ^ tableSalt;
+			long entry = table.probe(key);
+			int hashMove = (entry != 0) ? b.canonicalColumn(TranspositionTable.getColumn(entry)) : -1;
+
+			if (entry != 0 && depth != rootDepth && TranspositionTable.getDepth(entry) >= depth) {
+				int score = TranspositionTable.getScore(entry);
+				int bound = TranspositionTable.getBound(entry);
+
+				if (bound == TranspositionTable.EXACT) {
+					table.recordCutoff();
+					return score;
+				} else if (bound == TranspositionTable.LOWER_BOUND) {
+					alpha = Integer.max(alpha, score);
+				} else {
+					beta = Integer.min(beta, score);
+				}
+
+				if (beta <= alpha) {
+					table.recordCutoff();
+					return score;
+				}
+			}
+
+			int result;
+			int bestColumn = -1;
+			int bestMoveScore = Integer.MIN_VALUE;
+			int side = (maximizingPlayer) ? 0 : 1;
+			int moveCount = orderMoves(b, ply, hashMove, side, candidates);
+			boolean pvs = searchAlgorithm == SearchAlgorithm.PVS;
+
+			if (depth == rootDepth && !helper) {
+				Arrays.fill(rootScores, MIN_VALUE);
+			}
 
-			for (int i = 0; i < b.columns; i++) {
-				Board child = new Board(b);
-				if (child.placeMove(i, cpuColor)) {
-					result = Integer.max(result, minimax(child, depth - 1, alpha, beta, false));
+			if (maximizingPlayer) { // maximizing player is the cpu
+				result = MIN_VALUE;
+
+				for (int k = 0; k < moveCount; k++) {
+					int i = moveLists[ply][k];
+					makeMove(b, i);
+					int score;
+					if (k > 0 && pvs) {
+						// prove the move is no better than alpha, and only
+						// search it with the full window if it is
+						score = minimax(b, depth - 1, alpha, alpha + 1, false);
+						if (score > alpha && score < beta && !aborted) {
+							score = minimax(b, depth - 1, alpha, beta, false);
+						}
+					} else {
+						score = minimax(b, depth - 1, alpha, beta, false);
+					}
+					undoMove(b, i);
+					if (aborted) {
+						return 0;
+					}
+					if (bestColumn == -1 || score > result) {
+						result = score;
+						bestColumn = i;
+					}
 
-					if (depth == searchDepth) {
-						System.out.println("Score for location " + i + " = " + result);
+					if (depth == rootDepth && !helper) {
+						if (DEBUG) {
+							System.out.println("Score for location " + i + " = " + result);
+						}
+						rootScores[i] = score;
 						if (result > bestMoveScore) {
 							bestMoveScore = result;
 							nextMoveColumn = i;
@@ -636,35 +1467,158 @@ public class CPU {
 
 					alpha = Integer.max(alpha, result);
 
-					if (beta < alpha) {
+					if (beta <= alpha) {
 						// //System.out.println("cpu pruned");
+						recordCutoff(b, ply, k, i, depth, side);
 						break;
 					}
-				} else {
-					continue;
 				}
-			}
-		} else {
-			// //System.out.println("player");
-			result = MAX_VALUE;
-
-			for (int i = 0; i < b.columns; i++) {
-				Board child = new Board(b);
-				if (child.placeMove(i, playerColor)) {
-					result = Integer.min(result, minimax(child, depth - 1, alpha, beta, true));
+			} else {
+				// //System.out.println("player");
+				result = MAX_VALUE;
+
+				for (int k = 0; k < moveCount; k++) {
+					int i = moveLists[ply][k];
+					makeMove(b, i);
+					int score;
+					if (k > 0 && pvs) {
+						score = minimax(b, depth - 1, beta - 1, beta, true);
+						if (score < beta && score > alpha && !aborted) {
+							score = minimax(b, depth - 1, alpha, beta, true);
+						}
+					} else {
+						score = minimax(b, depth - 1, alpha, beta, true);
+					}
+					undoMove(b, i);
+					if (aborted) {
+						return 0;
+					}
+					if (bestColumn == -1 || score < result) {
+						result = score;
+						bestColumn = i;
+					}
 					beta = Integer.min(beta, result);
 
 					if (beta <= alpha) {
 						// //System.out.println("player pruned");
+						recordCutoff(b, ply, k, i, depth, side);
 						break;
 					}
-				} else {
+				}
+			}
+
+			int bound;
+			if (result <= alphaOriginal) {
+				bound = TranspositionTable.UPPER_BOUND;
+			} else if (result >= betaOriginal) {
+				bound = TranspositionTable.LOWER_BOUND;
+			} else {
+				bound = TranspositionTable.EXACT;
+			}
+			table.store(key, result, bound, depth, b.canonicalColumn(bestColumn));
+
+			return result;
+
+		}
+
+		/**
+		 * Fills the move list for a ply with the given moves of a node, best
+		 * first: the hash move from the transposition table, then the killer
+		 * moves of the ply, then the rest by history score, with ties going to the
+		 * columns nearest the center
+		 * 
+		 * @param b
+		 *            Board node whose moves are ordered
+		 * @param ply
+		 *            distance of the node from the root
+		 * @param hashMove
+		 *            best column stored for the node, or -1 if none
+		 * @param side
+		 *            0 if the CPU is to move and 1 if the player is
+		 * @param candidates
+		 *            spaces of the moves to search, as given by
+		 *            BitBoard.possibleMoves or BitBoard.nonLosingMoves
+		 * @return number of moves in the list
+		 */
+		private int orderMoves(BitBoard b, int ply, int hashMove, int side, long candidates) {
+			int[] moves = moveLists[ply];
+			int[] scores = moveScores[ply];
+			int count = 0;
+
+			for (int k = 0; k < columnOrder.length; k++) {
+				int column = columnOrder[k];
+				if ((candidates & BitBoard.columnMask(column)) == 0) {
 					continue;
 				}
+
+				int score;
+				if (column == hashMove) {
+					score = HASH_MOVE_SCORE;
+				} else if (column == killers[ply][0]) {
+					score = KILLER_SCORE;
+				} else if (column == killers[ply][1]) {
+					score = KILLER_SCORE - 1;
+				} else {
+					score = history[side][b.getMoveIndex(column)];
+				}
+
+				// insertion sort, equal scores keep the center-out order
+				int i = count++;
+				while (i > 0 && scores[i - 1] < score) {
+					moves[i] = moves[i - 1];
+					scores[i] = scores[i - 1];
+					i--;
+				}
+				moves[i] = column;
+				scores[i] = score;
 			}
+
+			return count;
 		}
 
-		return result;
+		/**
+		 * Remembers a move that caused a beta cutoff as a killer move for its ply
+		 * and credits it in the history table
+		 * 
+		 * @param b
+		 *            Board node where the cutoff happened
+		 * @param ply
+		 *            distance of the node from the root
+		 * @param index
+		 *            position of the move in the ordered move list
+		 * @param column
+		 *            column of the move
+		 * @param depth
+		 *            remaining depth of the node
+		 * @param side
+		 *            0 if the CPU is to move and 1 if the player is
+		 */
+		private void recordCutoff(BitBoard b, int ply, int index, int column, int depth, int side) {
+			betaCutoffs++;
+			if (index == 0) {
+				firstMoveCutoffs++;
+			}
+
+			if (killers[ply][0] != column) {
+				killers[ply][1] = killers[ply][0];
+				killers[ply][0] = column;
+			}
+
+			// deeper cutoffs save more work so they count for more
+			history[side][b.getMoveIndex(column)] += depth * depth;
+		}
 
+		/**
+		 * Forgets the killer moves and history scores of the previous move
+		 */
+		private void clearMoveOrdering() {
+			for (int i = 0; i < MAX_PLY; i++) {
+				killers[i][0] = -1;
+				killers[i][1] = -1;
+			}
+			for (int i = 0; i < history.length; i++) {
+				Arrays.fill(history[i], 0);
+			}
+		}
 	}
 }
@@ -0,0 +1,260 @@
+/**
+ * Solves Connect Four positions exactly by searching every line of play to
+ * the end of the game. Near the end of a game there are few enough empty
+ * spaces left for this to be fast, and unlike the CPU's minimax search it
+ * never relies on a heuristic score, so the move it finds is provably best.
+ *
+ * Scores are from the point of view of the player to move. A win scores the
+ * number of pieces the winner still has in hand when they make the winning
+ * move, so sooner wins score higher. A loss is the negative of the
+ * opponent's win and a draw is 0.
+ *
+ * Only moves that don't let the opponent win at once are searched, and
+ * moves that create the most new threats are searched first. Results are
+ * kept in a transposition table, which can be shared with the CPU's search.
+ */
+public class EndgameSolver {
+	private static final int SIZE = BitBoard.ROWS * BitBoard.COLUMNS;
+
+	// the solver only looks at the deadline once in this many nodes
+	private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+	// mixed into table keys so that solved scores are never mistaken for
+	// the heuristic scores the CPU's search keeps in the same table
+	private static final long SOLVER_KEY = 0xC2B2AE3D27D4EB4FL;
+
+	private final TranspositionTable table;
+	private final BitBoard position = new BitBoard();
+	private final int[][] moveLists = new int[SIZE + 1][BitBoard.COLUMNS];
+	private final int[][] moveScores = new int[SIZE + 1][BitBoard.COLUMNS];
+	private long deadline = Long.MAX_VALUE;
+	private long nodes;
+	private boolean aborted;
+	private int bestColumn = -1;
+
+	/**
+	 * Creates a solver that stores its results in the given table
+	 *
+	 * @param table
+	 *            table of solved positions
+	 */
+	public EndgameSolver(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * Sets the time after which the solver gives up
+	 *
+	 * @param deadline
+	 *            System.nanoTime() to stop at, or Long.MAX_VALUE for none
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Solves a position and finds its best move. When every move loses, the
+	 * one that holds out longest is chosen.
+	 *
+	 * @param b
+	 *            position to solve, which must not be over
+	 * @return score of the position for the player to move, or 0 if the
+	 *         solver ran out of time (see isAborted)
+	 */
+	public int solve(BitBoard b) {
+		position.set(b);
+		nodes = 0;
+		aborted = false;
+		bestColumn = -1;
+
+		for (int column : BitBoard.COLUMN_ORDER) {
+			if (position.isLegalMove(column)
+					&& Rules.isWin(position.getCurrent() | (position.possibleMoves() & BitBoard.columnMask(column)))) {
+				bestColumn = column;
+				return (SIZE + 1 - position.getMoves()) / 2;
+			}
+		}
+
+		int moves = position.getMoves();
+		int count = orderMoves(moves, position.nonLosingMoves(), -1);
+		if (count == 0) {
+			// every move loses at once, play anything
+			for (int column : BitBoard.COLUMN_ORDER) {
+				if (position.isLegalMove(column)) {
+					bestColumn = column;
+					break;
+				}
+			}
+			return -(SIZE - moves) / 2;
+		}
+
+		int alpha = -(SIZE - moves) / 2;
+		int beta = (SIZE + 1 - moves) / 2;
+		int[] columns = moveLists[moves];
+		bestColumn = columns[0];
+
+		for (int k = 0; k < count && alpha < beta; k++) {
+			position.placeMove(columns[k]);
+			int score = -negamax(-beta, -alpha);
+			position.undoMove(columns[k]);
+
+			if (aborted) {
+				return 0;
+			}
+			if (score > alpha) {
+				alpha = score;
+				bestColumn = columns[k];
+			}
+		}
+		return alpha;
+	}
+
+	/**
+	 * @return best column found by the last solve
+	 */
+	public int getBestColumn() {
+		return bestColumn;
+	}
+
+	/**
+	 * @return number of nodes visited by the last solve
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return true if the last solve ran out of time before finishing
+	 */
+	public boolean isAborted() {
+		return aborted;
+	}
+
+	/**
+	 * Checks whether the solver has to give up, which by default is when the
+	 * deadline has passed. Called every few thousand nodes.
+	 *
+	 * @return true if the solver has to stop
+	 */
+	protected boolean shouldStop() {
+		return System.nanoTime() > deadline;
+	}
+
+	/**
+	 * Alpha-beta negamax to the end of the game. The player to move must not
+	 * be able to win with their next piece, which holds for every position
+	 * reached through nonLosingMoves.
+	 */
+	private int negamax(int alpha, int beta) {
+		if ((++nodes & (CLOCK_CHECK_INTERVAL - 1)) == 0 && shouldStop()) {
+			aborted = true;
+		}
+		if (aborted) {
+			return 0;
+		}
+
+		int moves = position.getMoves();
+		long next = position.nonLosingMoves();
+		if (next == 0) {
+			return -(SIZE - moves) / 2;
+		}
+		if (moves >= SIZE - 2) {
+			return 0;
+		}
+
+		// the opponent can't win with their next piece, so the score is
+		// bounded by winning or losing two moves from now
+		int min = -(SIZE - 2 - moves) / 2;
+		int max = (SIZE - 1 - moves) / 2;
+
+		// shared with the mirror image, see BitBoard.getCanonicalHash
+		long key = position.getCanonicalHash() ^ SOLVER_KEY;
+		long entry = table.probe(key);
+		int hashMove = -1;
+		if (entry != 0) {
+			int score = TranspositionTable.getScore(entry);
+			int bound = TranspositionTable.getBound(entry);
+			if (bound == TranspositionTable.EXACT) {
+				table.recordCutoff();
+				return score;
+			} else if (bound == TranspositionTable.LOWER_BOUND) {
+				min = Math.max(min, score);
+			} else {
+				max = Math.min(max, score);
+			}
+			hashMove = position.canonicalColumn(TranspositionTable.getColumn(entry));
+		}
+
+		if (alpha < min) {
+			alpha = min;
+		}
+		if (beta > max) {
+			beta = max;
+		}
+		if (alpha >= beta) {
+			return alpha;
+		}
+
+		int originalAlpha = alpha;
+		int count = orderMoves(moves, next, hashMove);
+		int[] columns = moveLists[moves];
+		int best = columns[0];
+
+		for (int k = 0; k < count; k++) {
+			position.placeMove(columns[k]);
+			int score = -negamax(-beta, -alpha);
+			position.undoMove(columns[k]);
+
+			if (aborted) {
+				return 0;
+			}
+			if (score >= beta) {
+				table.store(key, score, TranspositionTable.LOWER_BOUND, SIZE - moves,
+						position.canonicalColumn(columns[k]));
+				return score;
+			}
+			if (score > alpha) {
+				alpha = score;
+				best = columns[k];
+			}
+		}
+
+		table.store(key, alpha, (alpha > originalAlpha) ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND,
+				SIZE - moves, position.canonicalColumn(best));
+		return alpha;
+	}
+
+	/**
+	 * Fills the move list for a ply with the columns of the given moves,
+	 * the hash move first and the rest by the number of winning spaces they
+	 * leave the player, ties broken from the center out
+	 *
+	 * @return number of moves
+	 */
+	private int orderMoves(int ply, long candidates, int hashMove) {
+		int[] columns = moveLists[ply];
+		int[] scores = moveScores[ply];
+		int count = 0;
+
+		for (int column : BitBoard.COLUMN_ORDER) {
+			long move = candidates & BitBoard.columnMask(column);
+			if (move == 0) {
+				continue;
+			}
+
+			int score = (column == hashMove) ? Integer.MAX_VALUE : position.countWinningSpaces(move);
+
+			// insertion sort, stable so equal scores keep the center-out
+			// order
+			int k = count++;
+			while (k > 0 && scores[k - 1] < score) {
+				columns[k] = columns[k - 1];
+				scores[k] = scores[k - 1];
+				k--;
+			}
+			columns[k] = column;
+			scores[k] = score;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Emits the game's Java Flight Recorder events without the rest of the game
+ * depending on jdk.jfr. The events and the class that emits them are in the
+ * jfr source folder, and are only loaded by initialize, on a JVM that has
+ * Flight Recorder. Until then, and on a JVM without it, every method does
+ * nothing, so the game runs the same on any Java 8 runtime.
+ *
+ * Loading Flight Recorder's classes takes a few hundred milliseconds the
+ * first time, so GameFrame initializes the events on a background thread at
+ * startup rather than on the first move. Events that happen before that is
+ * done are not recorded.
+ *
+ * An event that lasts is begun with one method, which returns the event or
+ * null if it isn't being recorded, and is ended and committed with another.
+ * The fields of an event are only filled in if it is committed.
+ */
+public class FlightRecorderEvents {
+	private static final String EVENTS_CLASS = "JfrEvents";
+
+	private static volatile FlightRecorderEvents instance = new FlightRecorderEvents();
+
+	/**
+	 * Only the events class in the jfr source folder extends this
+	 */
+	protected FlightRecorderEvents() {
+	}
+
+	/**
+	 * @return the events, which do nothing until initialize has loaded
+	 *         Flight Recorder
+	 */
+	public static FlightRecorderEvents get() {
+		return instance;
+	}
+
+	/**
+	 * Loads the Flight Recorder events if this JVM has Flight Recorder and
+	 * they were compiled in. Called once at startup.
+	 *
+	 * @return true if events are recorded from now on
+	 */
+	public static synchronized boolean initialize() {
+		if (instance.getClass() != FlightRecorderEvents.class) {
+			return true;
+		}
+		try {
+			Class.forName("jdk.jfr.Event");
+			instance = (FlightRecorderEvents) Class.forName(EVENTS_CLASS).getDeclaredConstructor().newInstance();
+			return true;
+		} catch (ReflectiveOperationException e) {
+			// no jdk.jfr, or the jfr source folder wasn't built
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Begins the event of the CPU choosing a move
+	 *
+	 * @return the event, or null if none is recorded
+	 */
+	public Object beginCpuMoveSearch() {
+		return null;
+	}
+
+	/**
+	 * Ends and commits the event of the CPU choosing a move
+	 *
+	 * @param event
+	 *            event from beginCpuMoveSearch
+	 * @param cpu
+	 *            CPU that chose the move
+	 * @param mode
+	 *            difficulty the move was chosen at
+	 * @param board
+	 *            game board before the move
+	 * @param column
+	 *            column chosen
+	 */
+	public void commitCpuMoveSearch(Object event, CPU cpu, char mode, char[][] board, int column) {
+	}
+
+	/**
+	 * Records a game starting
+	 *
+	 * @param mode
+	 *            difficulty of the game
+	 * @param playerColor
+	 *            the player's color
+	 * @param cpuColor
+	 *            the CPU's color
+	 */
+	public void gameStarted(char mode, char playerColor, char cpuColor) {
+	}
+
+	/**
+	 * Begins the event of a whole game
+	 *
+	 * @param mode
+	 *            difficulty of the game
+	 * @return the event, or null if none is recorded
+	 */
+	public Object beginGame(char mode) {
+		return null;
+	}
+
+	/**
+	 * Ends and commits the event of a whole game
+	 *
+	 * @param event
+	 *            event from beginGame
+	 * @param result
+	 *            player win, CPU win, tie or abandoned
+	 * @param moves
+	 *            number of pieces played by both players
+	 */
+	public void commitGame(Object event, String result, int moves) {
+	}
+
+	/**
+	 * Begins the event of the board screen applying a move
+	 *
+	 * @return the event, or null if none is recorded
+	 */
+	public Object beginMoveApplied() {
+		return null;
+	}
+
+	/**
+	 * Ends and commits the event of the board screen applying a move
+	 *
+	 * @param event
+	 *            event from beginMoveApplied
+	 * @param player
+	 *            player or CPU
+	 * @param column
+	 *            column of the move
+	 * @param row
+	 *            row the piece landed in
+	 * @param win
+	 *            true if the move won the game
+	 */
+	public void commitMoveApplied(Object event, String player, int column, int row, boolean win) {
+	}
+}
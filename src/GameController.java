@@ -1,4 +1,6 @@
 import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * The GameController is used to implement the core logic of the Connect Four game.
@@ -8,12 +10,18 @@ import java.math.BigDecimal;
  */
 public class GameController {
 	
-	private static final int rows = 6;
 	private static final int columns = 7;
 	private static final char yellow = 'Y';
 	private static final char red = 'R';
 	
 	private GameModel gameModel;	
+	private TranspositionTable transpositionTable;
+	private Map<Character, CPU.SearchAlgorithm> searchAlgorithms = new HashMap<Character, CPU.SearchAlgorithm>();
+	private boolean pondering = true;
+	private CPU cpu;
+	private boolean gameStarted; // true from the first move of a game until its result
+	private Object game; // Flight Recorder event of the game being played, null if it isn't recorded
+	private int movesPlayed;
 
 	
 	/**
@@ -30,6 +38,7 @@ public class GameController {
 	 */
 	public void setMode(char mode) {
 		gameModel.setMode(mode);
+		replaceCPU();
 	}
 	
 	
@@ -60,12 +69,102 @@ public class GameController {
 	}
 	
 	
+	/**
+	 * Gets the transposition table shared by the CPU's searches for the session, creating it when first needed.
+	 * @return the table of positions the CPU has already searched.
+	 */
+	public TranspositionTable getTranspositionTable() {
+		if (transpositionTable == null) {
+			transpositionTable = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
+		}
+		return transpositionTable;
+	}
+	
+	
+	/**
+	 * Replaces the CPU's transposition table with an empty one of the given size.
+	 * @param sizeMB size of the table in megabytes.
+	 */
+	public void setTranspositionTableSize(int sizeMB) {
+		transpositionTable = new TranspositionTable(sizeMB);
+		replaceCPU();
+	}
+	
+	
+	/**
+	 * Gets the CPU player of the current game. The same CPU is kept for the whole session, so its table and pondering
+	 * carry over from one move to the next; it is replaced when the mode, colors or table change.
+	 * @return the CPU player, set up for the current mode.
+	 */
+	public CPU getCPU() {
+		if (cpu == null) {
+			cpu = new CPU(gameModel, getMode(), getTranspositionTable());
+			cpu.setPondering(pondering);
+		}
+		cpu.setSearchAlgorithm(getSearchAlgorithm(getMode()));
+		return cpu;
+	}
+	
+	
+	/**
+	 * Drops the CPU player after a change to its setup, so a new one is created when it is next needed.
+	 */
+	private void replaceCPU() {
+		stopCPU();
+		cpu = null;
+	}
+	
+	
+	/**
+	 * Sets the search algorithm the CPU uses at a level of difficulty.
+	 * @param mode the level of difficulty.
+	 * @param algorithm the algorithm to search with at that level.
+	 */
+	public void setSearchAlgorithm(char mode, CPU.SearchAlgorithm algorithm) {
+		searchAlgorithms.put(mode, algorithm);
+	}
+	
+	
+	/**
+	 * Gets the search algorithm the CPU uses at a level of difficulty.
+	 * @param mode the level of difficulty.
+	 * @return the algorithm set for that level, or CPU.DEFAULT_SEARCH_ALGORITHM if none was set.
+	 */
+	public CPU.SearchAlgorithm getSearchAlgorithm(char mode) {
+		CPU.SearchAlgorithm algorithm = searchAlgorithms.get(mode);
+		return (algorithm != null) ? algorithm : CPU.DEFAULT_SEARCH_ALGORITHM;
+	}
+	
+	
+	/**
+	 * Sets whether the CPU searches its replies to the player's possible moves while the player is thinking.
+	 * @param pondering true to ponder on the player's time.
+	 */
+	public void setPondering(boolean pondering) {
+		this.pondering = pondering;
+		
+		if (cpu != null) {
+			cpu.setPondering(pondering);
+		}
+	}
+	
+	
+	/**
+	 * Gets whether the CPU searches its replies to the player's possible moves while the player is thinking.
+	 * @return true if the CPU ponders on the player's time.
+	 */
+	public boolean isPondering() {
+		return pondering;
+	}
+	
+	
 	/**
 	 * Sets the player's game piece color.
 	 * @param c The color of the player's game piece.
 	 */
 	public void setPlayerColor(char c) {
 		gameModel.setPlayerColor(c);
+		replaceCPU();
 	}
 
 	
@@ -92,6 +191,7 @@ public class GameController {
 	 */
 	public void incrementWins() {
 		gameModel.incrementWins();
+		finishGame("Player win");
 	}
 
 	
@@ -100,6 +200,7 @@ public class GameController {
 	 */
 	public void incrementLosses() {
 		gameModel.incrementLosses();
+		finishGame("CPU win");
 	}
 
 	
@@ -108,6 +209,7 @@ public class GameController {
 	 */
 	public void incrementTies() {
 		gameModel.incrementTies();
+		finishGame("Tie");
 	}
 	
 	
@@ -162,6 +264,57 @@ public class GameController {
 	 */
 	public void resetBoard(){
 		gameModel.resetBoard();
+		stopCPU();
+		abandonGame();
+	}
+	
+	
+	/**
+	 * Ends the game being played without a result, as when the player leaves it.
+	 */
+	public void abandonGame() {
+		finishGame("Abandoned");
+	}
+	
+	
+	/**
+	 * Records the start of a game for Java Flight Recorder. The game's own event is begun here and committed by
+	 * finishGame, so it lasts as long as the game.
+	 */
+	private void startGame() {
+		FlightRecorderEvents events = FlightRecorderEvents.get();
+		events.gameStarted(getMode(), getPlayerColor(), getCPUColor());
+		
+		game = events.beginGame(getMode());
+		gameStarted = true;
+		movesPlayed = 0;
+	}
+	
+	
+	/**
+	 * Records the end of the game being played for Java Flight Recorder, if one is being played.
+	 * @param result the result of the game.
+	 */
+	private void finishGame(String result) {
+		if (!gameStarted) {
+			return;
+		}
+		
+		if (game != null) {
+			FlightRecorderEvents.get().commitGame(game, result, movesPlayed);
+		}
+		game = null;
+		gameStarted = false;
+	}
+	
+	
+	/**
+	 * Stops any thinking the CPU is doing in the background on the player's time.
+	 */
+	public void stopCPU() {
+		if (cpu != null) {
+			cpu.newGame();
+		}
 	}
 	
 	
@@ -214,7 +367,15 @@ public class GameController {
 	 * @param player the color of the player to make a move.
 	 */
 	public void placeMove(int column, char player) {
+		if (!gameStarted) {
+			startGame();
+		}
 		gameModel.makeMove(column, player);
+		movesPlayed++;
+		
+		if (cpu != null) {
+			cpu.movePlayed(column);
+		}
 	}
 
 	
@@ -225,43 +386,19 @@ public class GameController {
 	 * @return true if there is a winning combination on the game board.
 	 */
 	public boolean checkWin(char[][] board, char color) {
-		// check for a horizontal win
-		for(int i = 0; i < rows; i++) {
-			for(int j = 0; j < columns-3; j++) {
-				if(board[i][j] == color && board[i][j+1] == color && board[i][j+2] == color && board[i][j+3] == color) {
-					return true;
-				}
-			}
-		}
-		
-		// check for a vertical win
-		for(int i = 0; i < rows - 3; i++) {
-			for(int j = 0; j < columns; j++) {
-				if(board[i][j] == color && board[i+1][j] == color && board[i+2][j] == color && board[i+3][j] == color) {
-					return true;
-				}
-			}
-		}
+		return Rules.isWin(board, color);
+	}
+	
+	/**
+	 * Checks whether the most recent move on the game's own board won the game. Only the lines through that
+	 * piece are checked, since it is the only piece that can have completed a sequence of four.
+	 * @return true if the last piece placed completed a sequence of four, false if no move was made yet.
+	 */
+	public boolean checkLastMoveWin() {
+		int row = gameModel.getLastMoveRow();
+		int column = gameModel.getLastMoveColumn();
 		
-		// check for ascending diagonal win
-		for (int i = 3; i < rows; i++) {
-			for (int j = 0; j < columns - 3; j++) {
-				if (board[i][j] == color && board[i-1][j+1] == color && board[i-2][j+2] == color && board[i-3][j+3] == color) {
-					return true;
-				}
-			}
-		}
-
-		// check for descending diagonal win
-		for (int i = 3; i < rows; i++) {
-			for (int j = 3; j < columns; j++) {
-				if (board[i][j] == color && board[i-1][j-1] == color && board[i-2][j-2] == color && board[i-3][j-3] == color) {
-					return true;
-				}
-			}
-		}
-		// no win has been found if code execution gets here
-		return false;
+		return row >= 0 && Rules.isWinningMove(gameModel.getBoard(), row, column);
 	}
 	
 } // end GameController
\ No newline at end of file
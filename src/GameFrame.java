@@ -35,9 +35,21 @@ public class GameFrame extends JFrame {
 	
 	
 	/**
-	 * Runs the Connect Four game and displays to the player the WelcomeScreen.
+	 * Runs the Connect Four game and displays to the player the WelcomeScreen. The CPU's search statistics are
+	 * published over JMX (see SearchStats) so they can be watched in jconsole, and the positions the CPU solves are
+	 * kept from one run to the next (see SolvedPositionStore).
 	 */
 	public static void main(String[] args) {
+		// loading Flight Recorder is slow, so it is done off the event thread
+		Thread events = new Thread(new Runnable() {
+			public void run() {
+				FlightRecorderEvents.initialize();
+			}
+		}, "Flight Recorder events");
+		events.setDaemon(true);
+		events.start();
+		SearchStats.register();
+		SolvedPositionStore.openDefault();
 		gameFrame = new GameFrame();
 		gameFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		gameFrame.setVisible(true);
@@ -15,6 +15,8 @@ public class GameModel {
 	private char playerColor; // 'Y' for yellow, 'R' for red
 	private char cpuColor; // 'Y' for yellow, 'R' for red
 	private char[][] gameBoard = new char[6][7]; // representing player placements
+	private int lastMoveRow = -1; // position of the most recently placed piece, -1 if none
+	private int lastMoveColumn = -1;
 
 	
 	/*
@@ -25,6 +27,24 @@ public class GameModel {
 	}
 
 	
+	/*
+	 * Creates a copy of another game's board, colors and mode, so moves can be tried on it without changing the
+	 * original.  The wins, ties and losses are not copied.
+	 */
+	public GameModel(GameModel other) {
+		this();
+		this.mode = other.mode;
+		this.playerColor = other.playerColor;
+		this.cpuColor = other.cpuColor;
+		this.lastMoveRow = other.lastMoveRow;
+		this.lastMoveColumn = other.lastMoveColumn;
+		
+		for (int i = 0; i < gameBoard.length; i++) {
+			gameBoard[i] = other.gameBoard[i].clone();
+		}
+	}
+
+	
 	/*
 	 * Sets the color of the human player and the CPU player.
 	 */
@@ -68,6 +88,7 @@ public class GameModel {
 	 */
 	public void resetBoard() {
 		gameBoard = new char[6][7];
+		lastMoveRow = lastMoveColumn = -1;
 	}
 
 	
@@ -143,6 +164,22 @@ public class GameModel {
 	}
 	
 	
+	/*
+	 * Returns the row of the most recently placed piece, or -1 if the board is empty.
+	 */
+	public int getLastMoveRow() {
+		return lastMoveRow;
+	}
+	
+	
+	/*
+	 * Returns the column of the most recently placed piece, or -1 if the board is empty.
+	 */
+	public int getLastMoveColumn() {
+		return lastMoveColumn;
+	}
+	
+	
 	/*
 	 * Determines if the given move in a column drop is legal.
 	 */
@@ -165,6 +202,8 @@ public class GameModel {
 		for (int i = 5; i >= 0; --i) {
 			if (gameBoard[i][column] == 0) {
 				gameBoard[i][column] = player;
+				lastMoveRow = i;
+				lastMoveColumn = column;
 				return true;
 			}
 		}
@@ -0,0 +1,185 @@
+/**
+ * Scores Connect Four positions for the CPU search using the 69 runs of four
+ * spaces that can make a win. For every run it keeps how many pieces each
+ * player has in it, and a run that holds pieces of only one player is worth
+ * points to that player. Placing or removing a piece only touches the runs
+ * through that space, so the score is kept up to date as the search makes
+ * and takes back moves and reading it at a leaf costs nothing.
+ *
+ * Players are numbered the same way as in BitBoard's hash: player 0 made the
+ * first move of the game and player 1 the second. Scores are from player 0's
+ * point of view.
+ */
+public class LineEvaluator {
+	public static final int LINE_COUNT = 69;
+
+	// bit indices (see BitBoard) of the four spaces of every run
+	private static final int[][] LINES = new int[LINE_COUNT][];
+
+	// runs through each space, by bit index
+	private static final int[][] LINES_THROUGH = new int[BitBoard.COLUMNS * (BitBoard.ROWS + 1)][];
+
+	// worth of a run holding 0-4 pieces of one player and none of the other
+	private static final int[] RUN_WEIGHT = { 0, 30, 200, 1000, 100000 };
+
+	// worth of a run for player 0 by [player 0 pieces][player 1 pieces]
+	private static final int[][] LINE_SCORE = new int[5][5];
+
+	static {
+		int n = 0;
+		for (int column = 0; column < BitBoard.COLUMNS; column++) {
+			for (int row = 0; row < BitBoard.ROWS; row++) {
+				if (column + 3 < BitBoard.COLUMNS) {
+					LINES[n++] = line(column, row, 1, 0);
+				}
+				if (row + 3 < BitBoard.ROWS) {
+					LINES[n++] = line(column, row, 0, 1);
+				}
+				if (column + 3 < BitBoard.COLUMNS && row + 3 < BitBoard.ROWS) {
+					LINES[n++] = line(column, row, 1, 1);
+				}
+				if (column + 3 < BitBoard.COLUMNS && row - 3 >= 0) {
+					LINES[n++] = line(column, row, 1, -1);
+				}
+			}
+		}
+
+		int[] through = new int[LINES_THROUGH.length];
+		for (int[] line : LINES) {
+			for (int index : line) {
+				through[index]++;
+			}
+		}
+		for (int i = 0; i < LINES_THROUGH.length; i++) {
+			LINES_THROUGH[i] = new int[through[i]];
+			through[i] = 0;
+		}
+		for (int l = 0; l < LINE_COUNT; l++) {
+			for (int index : LINES[l]) {
+				LINES_THROUGH[index][through[index]++] = l;
+			}
+		}
+
+		for (int own = 0; own <= 4; own++) {
+			for (int other = 0; other <= 4; other++) {
+				if (other == 0) {
+					LINE_SCORE[own][other] = RUN_WEIGHT[own];
+				} else if (own == 0) {
+					LINE_SCORE[own][other] = -RUN_WEIGHT[other];
+				}
+			}
+		}
+	}
+
+	private final int[][] counts = new int[2][LINE_COUNT];
+	private int score;
+	private long evaluations;
+
+	/**
+	 * Sets the evaluator to the pieces of a position, counting every run from
+	 * scratch
+	 *
+	 * @param b
+	 *            position to evaluate
+	 */
+	public void set(BitBoard b) {
+		int toMove = b.getMoves() & 1;
+		long current = b.getCurrent();
+		long opponent = b.getOpponent();
+
+		score = 0;
+		for (int l = 0; l < LINE_COUNT; l++) {
+			counts[0][l] = 0;
+			counts[1][l] = 0;
+			for (int index : LINES[l]) {
+				if ((current & (1L << index)) != 0) {
+					counts[toMove][l]++;
+				} else if ((opponent & (1L << index)) != 0) {
+					counts[toMove ^ 1][l]++;
+				}
+			}
+			score += LINE_SCORE[counts[0][l]][counts[1][l]];
+		}
+	}
+
+	/**
+	 * Updates the runs through a space after a piece is placed there
+	 *
+	 * @param index
+	 *            bit index of the space
+	 * @param player
+	 *            0 or 1, the player who placed the piece
+	 */
+	public void add(int index, int player) {
+		int[] own = counts[player];
+		int[] zero = counts[0];
+		int[] one = counts[1];
+		for (int l : LINES_THROUGH[index]) {
+			score -= LINE_SCORE[zero[l]][one[l]];
+			own[l]++;
+			score += LINE_SCORE[zero[l]][one[l]];
+		}
+	}
+
+	/**
+	 * Updates the runs through a space after the piece there is taken back
+	 *
+	 * @param index
+	 *            bit index of the space
+	 * @param player
+	 *            0 or 1, the player whose piece is removed
+	 */
+	public void remove(int index, int player) {
+		int[] own = counts[player];
+		int[] zero = counts[0];
+		int[] one = counts[1];
+		for (int l : LINES_THROUGH[index]) {
+			score -= LINE_SCORE[zero[l]][one[l]];
+			own[l]--;
+			score += LINE_SCORE[zero[l]][one[l]];
+		}
+	}
+
+	/**
+	 * @return score of the current position from player 0's point of view
+	 */
+	public int getScore() {
+		evaluations++;
+		return score;
+	}
+
+	/**
+	 * @return number of times the score has been read
+	 */
+	public long getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * Starts counting the times the score is read from zero
+	 */
+	public void resetEvaluations() {
+		evaluations = 0;
+	}
+
+	/**
+	 * Scores a position from scratch, without keeping any state
+	 *
+	 * @param b
+	 *            position to evaluate
+	 * @return score of the position from player 0's point of view
+	 */
+	public static int evaluate(BitBoard b) {
+		LineEvaluator evaluator = new LineEvaluator();
+		evaluator.set(b);
+		return evaluator.score;
+	}
+
+	private static int[] line(int column, int row, int dColumn, int dRow) {
+		int[] line = new int[4];
+		for (int k = 0; k < 4; k++) {
+			line[k] = (column + k * dColumn) * (BitBoard.ROWS + 1) + row + k * dRow;
+		}
+		return line;
+	}
+}
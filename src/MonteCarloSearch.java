@@ -0,0 +1,474 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Chooses moves by Monte Carlo tree search instead of minimax: it plays many
+ * quick games (playouts) from the position and grows a tree of the moves
+ * that did best in them. Moves are chosen down the tree by UCT, which
+ * balances a move's win rate against how rarely it has been tried, and each
+ * playout starts from a new leaf of the tree. Playouts are lightly guided: a
+ * player who can win at once does, and no player makes a move that lets the
+ * other win at once, otherwise moves are random. It needs no evaluation
+ * function, so it makes a useful comparison with the minimax search.
+ *
+ * The tree is kept between moves, so when the game reaches a position that
+ * is already in it, the playouts made below that position are reused.
+ *
+ * Several threads can make playouts at once. The tree is only changed while
+ * holding its lock, and the playouts themselves, where the time goes, run
+ * outside it. A thread walking down the tree counts its visit at once and
+ * its result only when its playout is done, so until then the moves it chose
+ * look like losses (a virtual loss) and the other threads choose different
+ * ones.
+ */
+public class MonteCarloSearch {
+	private static final int SIZE = BitBoard.ROWS * BitBoard.COLUMNS;
+
+	// number of playouts between checks of the clock
+	private static final int CLOCK_CHECK_INTERVAL = 64;
+
+	// weight of the exploration term of UCT
+	private static final double EXPLORATION = 1.0;
+
+	// the tree stops growing at this many nodes, and playouts then start at
+	// its leaves
+	private static final int MAX_NODES = 1 << 20;
+
+	// how a position in the tree ended, for the player to move there
+	private static final byte NOT_OVER = 0;
+	private static final byte WON = 1;
+	private static final byte LOST = 2;
+	private static final byte DRAWN = 3;
+
+	// playouts are random but repeatable: the same position searched on one
+	// thread always gets the same playouts
+	private static final long SEED = 20171120L;
+
+	private final BitBoard rootPosition = new BitBoard();
+	private Node root;
+	private int nodeCount;
+	private long deadline = Long.MAX_VALUE;
+	private long playoutBudget = Long.MAX_VALUE;
+	private long playouts;
+	private long plies;
+	private int reusedVisits;
+	private volatile boolean stopped;
+
+	/**
+	 * Sets the time after which the search stops
+	 *
+	 * @param deadline
+	 *            System.nanoTime() to stop at, or Long.MAX_VALUE for none
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Sets the number of playouts after which the search stops
+	 *
+	 * @param playoutBudget
+	 *            playouts per move, or Long.MAX_VALUE for no limit
+	 */
+	public void setPlayoutBudget(long playoutBudget) {
+		this.playoutBudget = playoutBudget;
+	}
+
+	/**
+	 * Searches a position and finds its best move, the one played out the
+	 * most. At least one playout is made. With a pool, playouts are made on
+	 * as many threads as its parallelism, the calling thread being one of
+	 * them; the pool is left running for the next move.
+	 *
+	 * @param b
+	 *            position to search, which must not be over
+	 * @param pool
+	 *            threads to make playouts on, or null to make them all on
+	 *            the calling thread
+	 * @return column of the best move
+	 */
+	public int search(BitBoard b, ForkJoinPool pool) {
+		reuseTree(b);
+		playouts = 0;
+		plies = 0;
+		stopped = false;
+
+		SplittableRandom rand = new SplittableRandom(SEED ^ b.getKey());
+		if (pool != null && pool.getParallelism() > 1) {
+			List<ForkJoinTask<?>> workers = new ArrayList<ForkJoinTask<?>>();
+			try {
+				for (int i = 1; i < pool.getParallelism(); i++) {
+					final SplittableRandom workerRand = rand.split();
+					workers.add(pool.submit(new Runnable() {
+						public void run() {
+							makePlayouts(workerRand);
+						}
+					}));
+				}
+				makePlayouts(rand);
+			} finally {
+				stopped = true;
+				for (ForkJoinTask<?> worker : workers) {
+					worker.quietlyJoin();
+				}
+			}
+		} else {
+			makePlayouts(rand);
+		}
+
+		return getBestColumn();
+	}
+
+	/**
+	 * @return column played out the most from the root, ties going to the
+	 *         higher win rate
+	 */
+	public synchronized int getBestColumn() {
+		Node best = null;
+		for (int i = 0; i < root.childCount; i++) {
+			Node child = root.children[i];
+			if (best == null || child.visits > best.visits
+					|| (child.visits == best.visits && child.wins > best.wins)) {
+				best = child;
+			}
+		}
+		return (best != null) ? best.column : -1;
+	}
+
+	/**
+	 * @return share of the playouts through the best column that the CPU
+	 *         won, counting draws as half
+	 */
+	public synchronized double getWinRate() {
+		int column = getBestColumn();
+		for (int i = 0; i < root.childCount; i++) {
+			Node child = root.children[i];
+			if (child.column == column) {
+				return (child.visits > 0) ? child.wins / child.visits : 0.5;
+			}
+		}
+		return 0.5;
+	}
+
+	/**
+	 * @return number of moves in the line of most played moves from the root
+	 */
+	public synchronized int getDepth() {
+		int depth = 0;
+		for (Node node = root; node.childCount > 0; depth++) {
+			Node best = node.children[0];
+			for (int i = 1; i < node.childCount; i++) {
+				if (node.children[i].visits > best.visits) {
+					best = node.children[i];
+				}
+			}
+			node = best;
+		}
+		return depth;
+	}
+
+	/**
+	 * @return number of playouts made by the last search
+	 */
+	public long getPlayouts() {
+		return playouts;
+	}
+
+	/**
+	 * @return number of positions visited by the last search, in the tree
+	 *         and in playouts
+	 */
+	public long getPlies() {
+		return plies;
+	}
+
+	/**
+	 * @return number of playouts through the root that were kept from earlier
+	 *         searches
+	 */
+	public int getReusedVisits() {
+		return reusedVisits;
+	}
+
+	/**
+	 * @return number of positions in the tree
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Checks whether the search has to stop, which by default is when the
+	 * deadline has passed. Called every few dozen playouts.
+	 *
+	 * @return true if the search has to stop
+	 */
+	protected boolean shouldStop() {
+		return System.nanoTime() > deadline;
+	}
+
+	/**
+	 * Makes the next search start from another search's tree, as if this
+	 * search had made its playouts. Both keep growing the same nodes, so they
+	 * may only search at the same time if their positions are in different
+	 * branches of the tree.
+	 *
+	 * @param other
+	 *            search whose tree to use
+	 */
+	public synchronized void shareTree(MonteCarloSearch other) {
+		synchronized (other) {
+			root = other.root;
+			rootPosition.set(other.rootPosition);
+			nodeCount = other.nodeCount;
+		}
+	}
+
+	/**
+	 * Makes the root the node of the given position if the tree has it, up
+	 * to two moves below the old root, or starts a new tree
+	 */
+	private synchronized void reuseTree(BitBoard b) {
+		Node found = null;
+		if (root != null) {
+			found = find(root, rootPosition, b.getKey(), 2);
+		}
+
+		if (found == null) {
+			found = new Node(-1);
+			nodeCount = 1;
+		} else {
+			nodeCount = countNodes(found);
+		}
+
+		// a position that is won in one move is left out of the tree below
+		// it, but the root needs its moves to choose one
+		root = found;
+		root.terminal = NOT_OVER;
+		rootPosition.set(b);
+		if (root.childCount == 0 && root.untried == 0) {
+			// the root keeps every move when they all lose, so that a column
+			// is still chosen
+			long moves = (b.canWinNext()) ? 0 : b.nonLosingMoves();
+			root.untried = (moves != 0) ? moves : b.possibleMoves();
+		}
+		reusedVisits = root.visits;
+	}
+
+	private static Node find(Node node, BitBoard position, long key, int depth) {
+		if (position.getKey() == key) {
+			return node;
+		}
+		if (depth == 0) {
+			return null;
+		}
+
+		BitBoard next = new BitBoard();
+		for (int i = 0; i < node.childCount; i++) {
+			next.set(position);
+			next.placeMove(node.children[i].column);
+			Node found = find(node.children[i], next, key, depth - 1);
+			if (found != null) {
+				return found;
+			}
+		}
+		return null;
+	}
+
+	private static int countNodes(Node node) {
+		int count = 1;
+		for (int i = 0; i < node.childCount; i++) {
+			count += countNodes(node.children[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Makes playouts until a budget runs out or another thread stops the
+	 * search
+	 */
+	private void makePlayouts(SplittableRandom rand) {
+		BitBoard position = new BitBoard();
+		Node[] path = new Node[SIZE + 1];
+		long count = 0;
+
+		while (!stopped) {
+			if (++count % CLOCK_CHECK_INTERVAL == 0 && shouldStop()) {
+				stopped = true;
+				break;
+			}
+
+			int length;
+			synchronized (this) {
+				if (playouts >= playoutBudget && root.visits > 0) {
+					stopped = true;
+					break;
+				}
+				position.set(rootPosition);
+				length = select(position, path, rand);
+			}
+
+			// result for the player to move at the end of the path
+			Node leaf = path[length - 1];
+			int start = position.getMoves();
+			double result;
+			if (leaf.terminal == WON) {
+				result = 1;
+			} else if (leaf.terminal == LOST) {
+				result = 0;
+			} else if (leaf.terminal == DRAWN) {
+				result = 0.5;
+			} else {
+				result = playout(position, rand);
+			}
+
+			synchronized (this) {
+				// each node's wins are for the player who moved into it
+				double reward = 1 - result;
+				for (int i = length - 1; i >= 0; i--) {
+					path[i].wins += reward;
+					reward = 1 - reward;
+				}
+				playouts++;
+				plies += length + position.getMoves() - start;
+			}
+		}
+	}
+
+	/**
+	 * Walks down the tree by UCT from the root to a node that is over or has
+	 * moves not yet in the tree, adds one of those moves, and counts a visit
+	 * to every node on the way. Must hold the lock.
+	 *
+	 * @return length of the path, which ends at the node to play out from
+	 */
+	private int select(BitBoard position, Node[] path, SplittableRandom rand) {
+		Node node = root;
+		int length = 0;
+		path[length++] = node;
+		node.visits++;
+
+		while (node.terminal == NOT_OVER) {
+			if (node.untried != 0 && nodeCount < MAX_NODES) {
+				// add a random move that isn't in the tree yet
+				int pick = rand.nextInt(Long.bitCount(node.untried));
+				long move = node.untried;
+				for (int i = 0; i < pick; i++) {
+					move &= move - 1;
+				}
+				move = Long.lowestOneBit(move);
+				node.untried ^= move;
+
+				int column = Long.numberOfTrailingZeros(move) / (BitBoard.ROWS + 1);
+				position.placeMove(column);
+				Node child = node.addChild(column);
+				nodeCount++;
+				child.setMoves(position);
+				child.visits++;
+				path[length++] = child;
+				return length;
+			}
+			if (node.childCount == 0) {
+				return length;
+			}
+
+			Node best = null;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			double logVisits = Math.log(node.visits);
+			for (int i = 0; i < node.childCount; i++) {
+				Node child = node.children[i];
+				double value = (child.visits == 0) ? Double.POSITIVE_INFINITY
+						: child.wins / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+				if (value > bestValue) {
+					bestValue = value;
+					best = child;
+				}
+			}
+
+			position.placeMove(best.column);
+			node = best;
+			node.visits++;
+			path[length++] = node;
+		}
+		return length;
+	}
+
+	/**
+	 * Plays a game out from a position with lightly guided random moves
+	 *
+	 * @return 1 if the player to move at the start wins, 0 if they lose and
+	 *         0.5 for a draw
+	 */
+	private static double playout(BitBoard position, SplittableRandom rand) {
+		int player = 0;
+		while (true) {
+			if (position.canWinNext()) {
+				return (player == 0) ? 1 : 0;
+			}
+			long moves = position.nonLosingMoves();
+			if (moves == 0) {
+				return (player == 0) ? 0 : 1;
+			}
+
+			int pick = rand.nextInt(Long.bitCount(moves));
+			for (int i = 0; i < pick; i++) {
+				moves &= moves - 1;
+			}
+			position.placeMove(Long.numberOfTrailingZeros(moves) / (BitBoard.ROWS + 1));
+			if (position.boardIsFull()) {
+				return 0.5;
+			}
+			player ^= 1;
+		}
+	}
+
+	/**
+	 * A position in the tree, reached by playing a column from its parent
+	 */
+	private static class Node {
+		private final int column;
+		private Node[] children;
+		private int childCount;
+		private long untried;
+		private int visits;
+		private double wins;
+		private byte terminal = NOT_OVER;
+
+		Node(int column) {
+			this.column = column;
+		}
+
+		Node addChild(int column) {
+			if (children == null) {
+				children = new Node[BitBoard.COLUMNS];
+			}
+			Node child = new Node(column);
+			children[childCount++] = child;
+			return child;
+		}
+
+		/**
+		 * Works out whether the node's position is over and which moves can
+		 * be added below it. A player who can win at once will, and a
+		 * player who can't stop the other from winning has lost, so neither
+		 * needs to be searched further.
+		 */
+		void setMoves(BitBoard position) {
+			if (position.lastPlayerHasWon()) {
+				terminal = LOST;
+			} else if (position.boardIsFull()) {
+				terminal = DRAWN;
+			} else if (position.canWinNext()) {
+				terminal = WON;
+			} else {
+				untried = position.nonLosingMoves();
+				if (untried == 0) {
+					terminal = LOST;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,158 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Precomputed best moves for the first few moves of a game, read from a file
+ * written by OpeningBookGenerator. The board is emptiest at the start of a
+ * game, so these are the most expensive positions for the CPU to search, yet
+ * the answers never change.
+ *
+ * The file is a header followed by fixed-size records sorted by position key
+ * (see BitBoard.getKey). It is memory-mapped and looked up by binary search,
+ * so opening a book costs almost nothing no matter how large it is. A
+ * position and its mirror image share one record under their canonical key
+ * (see BitBoard.getCanonicalKey), with the column as seen from the canonical
+ * side, which halves the size of the book.
+ *
+ * <pre>
+ * header: int magic, int version, int plies, int depth, int record count, int unused
+ * record: long key, int score, int column
+ * </pre>
+ */
+public class OpeningBook {
+	public static final String DEFAULT_FILE = "openingBook.bin";
+
+	static final int MAGIC = 0x43344F42; // "C4OB"
+	static final int VERSION = 2;
+	static final int HEADER_BYTES = 24;
+	static final int RECORD_BYTES = 16;
+
+	private static OpeningBook defaultBook;
+	private static boolean defaultBookLoaded;
+
+	private final ByteBuffer records;
+	private final int plies;
+	private final int depth;
+	private final int count;
+
+	/**
+	 * Opens a book file
+	 *
+	 * @param file
+	 *            book written by OpeningBookGenerator
+	 * @throws IOException
+	 *             if the file can't be read or is not an opening book
+	 */
+	public OpeningBook(File file) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException(file + " is not an opening book");
+		}
+
+		this.plies = buffer.getInt(8);
+		this.depth = buffer.getInt(12);
+		this.count = buffer.getInt(16);
+
+		if (buffer.capacity() < HEADER_BYTES + (long) count * RECORD_BYTES) {
+			throw new IOException(file + " is truncated");
+		}
+
+		buffer.position(HEADER_BYTES);
+		this.records = buffer.slice();
+	}
+
+	/**
+	 * Gets the book in DEFAULT_FILE in the working directory, opening it the
+	 * first time it is asked for
+	 *
+	 * @return the default book, or null if there is none
+	 */
+	public static synchronized OpeningBook getDefault() {
+		if (!defaultBookLoaded) {
+			defaultBookLoaded = true;
+			File file = new File(DEFAULT_FILE);
+
+			if (file.isFile()) {
+				try {
+					defaultBook = new OpeningBook(file);
+				} catch (IOException e) {
+					System.err.println("Could not open opening book: " + e.getMessage());
+				}
+			}
+		}
+		return defaultBook;
+	}
+
+	/**
+	 * Finds a position in the book
+	 *
+	 * @param key
+	 *            position key from BitBoard.getCanonicalKey
+	 * @return index of the position's record, or -1 if it is not in the book
+	 */
+	public int find(long key) {
+		int low = 0;
+		int high = count - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midKey = records.getLong(mid * RECORD_BYTES);
+
+			if (midKey < key) {
+				low = mid + 1;
+			} else if (midKey > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param index
+	 *            record index returned by find
+	 * @return score of the position for the player to move
+	 */
+	public int getScore(int index) {
+		return records.getInt(index * RECORD_BYTES + 8);
+	}
+
+	/**
+	 * @param index
+	 *            record index returned by find
+	 * @return best column for the player to move, on the canonical side
+	 */
+	public int getColumn(int index) {
+		return records.getInt(index * RECORD_BYTES + 12);
+	}
+
+	/**
+	 * @return positions with fewer than this many pieces are in the book
+	 */
+	public int getPlies() {
+		return plies;
+	}
+
+	/**
+	 * @return depth the book's positions were searched to
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return number of positions in the book
+	 */
+	public int size() {
+		return count;
+	}
+}
@@ -0,0 +1,152 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes an opening book for the CPU by searching every position that can
+ * come up in the first moves of a game. This takes a long time for a large
+ * book, so it is run once ahead of time instead of while playing:
+ *
+ * <pre>
+ * java OpeningBookGenerator [file] [plies] [depth]
+ * </pre>
+ *
+ * The book holds every position with fewer than plies pieces on the board
+ * (default 6), each searched depth moves ahead (default 14). The file
+ * defaults to OpeningBook.DEFAULT_FILE, which is where the game looks for
+ * it.
+ */
+public class OpeningBookGenerator {
+	private static final char red = 'R';
+	private static final char yellow = 'Y';
+
+	private final int plies;
+	private final int depth;
+	private final TranspositionTable table = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB * 4);
+	private final Set<Long> visited = new HashSet<Long>();
+	private final List<long[]> records = new ArrayList<long[]>();
+	private final int[] moves = new int[BitBoard.ROWS * BitBoard.COLUMNS];
+
+	/**
+	 * Creates a generator for a book of the given size
+	 *
+	 * @param plies
+	 *            positions with fewer pieces than this are put in the book
+	 * @param depth
+	 *            how many moves ahead each position is searched
+	 */
+	public OpeningBookGenerator(int plies, int depth) {
+		this.plies = plies;
+		this.depth = depth;
+	}
+
+	public static void main(String[] args) throws IOException {
+		File file = new File((args.length > 0) ? args[0] : OpeningBook.DEFAULT_FILE);
+		int plies = (args.length > 1) ? Integer.parseInt(args[1]) : 6;
+		int depth = (args.length > 2) ? Integer.parseInt(args[2]) : 14;
+
+		OpeningBookGenerator generator = new OpeningBookGenerator(plies, depth);
+		long start = System.nanoTime();
+		generator.generate();
+		generator.write(file);
+		System.out.println("Wrote " + generator.records.size() + " positions to " + file + " in "
+				+ (System.nanoTime() - start) / 1000000000L + " s");
+	}
+
+	/**
+	 * Searches every position of the book
+	 */
+	public void generate() {
+		visited.clear();
+		records.clear();
+		addPositions(new BitBoard());
+	}
+
+	/**
+	 * Writes the searched positions to a book file, sorted by key
+	 *
+	 * @param file
+	 *            file to write
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public void write(File file) throws IOException {
+		Collections.sort(records, new Comparator<long[]>() {
+			public int compare(long[] a, long[] b) {
+				return Long.compare(a[0], b[0]);
+			}
+		});
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(OpeningBook.MAGIC);
+			out.writeInt(OpeningBook.VERSION);
+			out.writeInt(plies);
+			out.writeInt(depth);
+			out.writeInt(records.size());
+			out.writeInt(0);
+
+			for (long[] record : records) {
+				out.writeLong(record[0]);
+				out.writeInt((int) record[1]);
+				out.writeInt((int) record[2]);
+			}
+		}
+	}
+
+	/**
+	 * Searches a position and every position reachable from it that still
+	 * belongs in the book. Positions reached through different move orders,
+	 * and mirror images of positions already searched, are only searched
+	 * once.
+	 */
+	private void addPositions(BitBoard b) {
+		if (b.getMoves() >= plies || b.boardIsFull() || b.lastPlayerHasWon()
+				|| !visited.add(b.getCanonicalKey())) {
+			return;
+		}
+
+		int[] best = search(b.getMoves());
+		int bestColumn = (b.isKeyMirrored()) ? BitBoard.mirrorColumn(best[0]) : best[0];
+		records.add(new long[] { b.getCanonicalKey(), best[1], bestColumn });
+
+		for (int column = 0; column < BitBoard.COLUMNS; column++) {
+			if (b.isLegalMove(column)) {
+				moves[b.getMoves()] = column;
+				b.placeMove(column);
+				addPositions(b);
+				b.undoMove(column);
+			}
+		}
+	}
+
+	/**
+	 * Plays the first count moves on a new game and lets an Advanced CPU
+	 * choose the next one
+	 *
+	 * @return the chosen column and its score
+	 */
+	private int[] search(int count) {
+		// red always moves first, the CPU plays whoever is to move
+		GameModel model = new GameModel();
+		model.setPlayerColor((count % 2 == 0) ? yellow : red);
+		for (int i = 0; i < count; i++) {
+			model.makeMove(moves[i], (i % 2 == 0) ? red : yellow);
+		}
+
+		CPU cpu = new CPU(model, 'A', table);
+		cpu.setOpeningBook(null);
+		cpu.setSearchDepth(depth);
+		cpu.setTimeBudget(0);
+		int column = cpu.getAIMove();
+		return new int[] { column, cpu.getScore() };
+	}
+}
@@ -0,0 +1,117 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Thinks about the CPU's next move while the player is still choosing
+ * theirs. Right after the CPU moves, the CPU's reply to every move the player
+ * could make is searched in the background, most central columns first, each
+ * by a copy of the CPU with its settings, transposition table and Monte Carlo
+ * tree. When the player moves, the reply to that move is taken (finished,
+ * still being searched or not yet started) and the searches of the other
+ * replies are cancelled.
+ *
+ * Each copy records its move in statistics of its own. The reply that is
+ * played is added to the CPU's statistics once it is done, and the replies
+ * that were finished but not played to SearchStats.getPonderingStats().
+ */
+public class Ponderer {
+	private final CPU owner;
+
+	// replies being searched, by the key of the position after the player's
+	// move
+	private final Map<Long, Reply> replies = new HashMap<Long, Reply>();
+
+	/**
+	 * Creates a ponderer for a CPU
+	 *
+	 * @param owner
+	 *            CPU whose replies are searched
+	 */
+	public Ponderer(CPU owner) {
+		this.owner = owner;
+	}
+
+	/**
+	 * Starts searching the CPU's replies to every move the player can make
+	 * in the given game, cancelling any earlier pondering
+	 *
+	 * @param model
+	 *            the game, with the player to move
+	 */
+	public void start(GameModel model) {
+		cancel();
+
+		// center columns first, the player is most likely to play them
+		for (int column : BitBoard.COLUMN_ORDER) {
+			if (model.getBoard()[0][column] != 0) {
+				continue;
+			}
+
+			GameModel next = new GameModel(model);
+			next.makeMove(column, model.getPlayerColor());
+
+			// nothing to reply to if the player's move ends the game
+			BitBoard b = new BitBoard(next.getBoard(), next.getCPUColor());
+			if (b.lastPlayerHasWon() || b.boardIsFull()) {
+				continue;
+			}
+
+			CPU cpu = owner.copy(next);
+			cpu.setSearchStats(new SearchStats());
+			replies.put(b.getKey(), new Reply(cpu, cpu.getAIMoveAsync()));
+		}
+	}
+
+	/**
+	 * Takes the CPU's reply to the position the player just made and cancels
+	 * the replies to the player's other moves
+	 *
+	 * @param model
+	 *            the game, with the CPU to move
+	 * @return the CPU's move, or null if this position was not pondered
+	 */
+	public CompletableFuture<Integer> take(GameModel model) {
+		final Reply reply = replies.remove(new BitBoard(model.getBoard(), model.getCPUColor()).getKey());
+		cancel();
+		if (reply == null) {
+			return null;
+		}
+
+		reply.move.whenComplete(new BiConsumer<Integer, Throwable>() {
+			public void accept(Integer column, Throwable failure) {
+				if (failure == null) {
+					owner.ponderedMovePlayed(reply.cpu);
+				}
+			}
+		});
+		return reply.move;
+	}
+
+	/**
+	 * Cancels every reply still being searched. Replies that were already
+	 * found are added to the pondering statistics.
+	 */
+	public void cancel() {
+		for (Reply reply : replies.values()) {
+			if (!reply.move.cancel(true) && !reply.move.isCompletedExceptionally()) {
+				SearchStats.getPonderingStats().add(reply.cpu.getSearchStats());
+			}
+		}
+		replies.clear();
+	}
+
+	/**
+	 * A reply being searched and the copy of the CPU searching it
+	 */
+	private static class Reply {
+		private final CPU cpu;
+		private final CompletableFuture<Integer> move;
+
+		Reply(CPU cpu, CompletableFuture<Integer> move) {
+			this.cpu = cpu;
+			this.move = move;
+		}
+	}
+}
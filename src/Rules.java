@@ -0,0 +1,118 @@
+/**
+ * Rules is used to decide whether a Connect Four game has been won. It is shared by the GameController, which
+ * checks the real game board, and the CPU, which checks the positions it searches.
+ */
+public class Rules {
+
+	private static final int rows = 6;
+	private static final int columns = 7;
+	private static final int H1 = BitBoard.ROWS + 1; // bits per column of a BitBoard
+
+	// directions of the four lines through a space: horizontal, vertical and both diagonals
+	private static final int[][] directions = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+
+
+	/**
+	 * Rules only has static methods.
+	 */
+	private Rules() {
+	}
+
+
+	/**
+	 * Checks whether the piece at the given position completes a sequence of four. Only the four lines through
+	 * that space are looked at, so this should be called with the most recently placed piece.
+	 * @param board a 2D character array representing a Connect Four game board.
+	 * @param row the row of the piece, 0 being the top of the board.
+	 * @param column the column of the piece.
+	 * @return true if the piece is part of a sequence of four pieces of its color.
+	 */
+	public static boolean isWinningMove(char[][] board, int row, int column) {
+		char color = board[row][column];
+
+		if (color == 0) {
+			return false;
+		}
+
+		for (int[] direction : directions) {
+			// count the piece itself plus matching pieces on both sides of it
+			int count = 1 + countInDirection(board, row, column, direction[0], direction[1], color)
+					+ countInDirection(board, row, column, -direction[0], -direction[1], color);
+
+			if (count >= 4) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Checks a whole game board for a sequence of four pieces of the given color.
+	 * @param board a 2D character array representing a Connect Four game board.
+	 * @param color the color of the game piece to check for a win.
+	 * @return true if there is a winning combination on the game board.
+	 */
+	public static boolean isWin(char[][] board, char color) {
+		long pieces = 0;
+
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				if (board[i][j] == color) {
+					pieces |= BitBoard.cellBit(i, j);
+				}
+			}
+		}
+		return isWin(pieces);
+	}
+
+
+	/**
+	 * Checks one player's pieces, laid out as a BitBoard, for a sequence of four in any direction. Each test ANDs
+	 * the pieces with themselves shifted one space along a direction, then does the same with the result shifted
+	 * two spaces; any bit left over marks the start of four in a row.
+	 * @param pos bitboard of one player's pieces.
+	 * @return true if the pieces contain a sequence of four.
+	 */
+	public static boolean isWin(long pos) {
+		// horizontal
+		long m = pos & (pos >> H1);
+		if ((m & (m >> (2 * H1))) != 0) {
+			return true;
+		}
+
+		// descending diagonal
+		m = pos & (pos >> (H1 - 1));
+		if ((m & (m >> (2 * (H1 - 1)))) != 0) {
+			return true;
+		}
+
+		// ascending diagonal
+		m = pos & (pos >> (H1 + 1));
+		if ((m & (m >> (2 * (H1 + 1)))) != 0) {
+			return true;
+		}
+
+		// vertical
+		m = pos & (pos >> 1);
+		return (m & (m >> 2)) != 0;
+	}
+
+
+	/**
+	 * Counts the pieces of a color in a row from a space, not counting the space itself.
+	 */
+	private static int countInDirection(char[][] board, int row, int column, int dRow, int dColumn, char color) {
+		int count = 0;
+		int i = row + dRow;
+		int j = column + dColumn;
+
+		while (i >= 0 && i < rows && j >= 0 && j < columns && board[i][j] == color && count < 3) {
+			count++;
+			i += dRow;
+			j += dColumn;
+		}
+		return count;
+	}
+
+} // end Rules
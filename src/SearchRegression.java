@@ -0,0 +1,366 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catches changes to how much work the CPU's search does. Every position of a
+ * corpus is searched to a fixed depth with each minimax algorithm, from an
+ * empty table on a single thread, so the number of nodes, leaf evaluations
+ * and cutoffs is the same on every run of the same code. The counts and the
+ * chosen column are compared with a baseline recorded earlier, and any
+ * column that changed or count that drifted more than the tolerance is a
+ * failure. A change that makes the search faster shows up too, and its
+ * baseline is recorded again on purpose.
+ *
+ * It also counts the positions reachable in a given number of moves (perft),
+ * which measures move generation on its own and checks it against the
+ * baseline.
+ *
+ * Finally it checks that the search allocates no more memory at greater
+ * depths: the empty board is searched to every depth up to the allocation
+ * depth by the same CPU, and the bytes allocated by each search, read from
+ * the thread's allocation counter, may not grow past those of the shallowest
+ * search by more than a few bytes. A search that allocates per node or per
+ * iteration fails. This needs a JVM that counts allocations per thread, and
+ * an allocation depth of 0 skips it.
+ *
+ * <pre>
+ * java SearchRegression [-record] [-tolerance fraction] [-corpus file] [-baseline file] [-perft depth]
+ *                       [-allocation depth]
+ * </pre>
+ *
+ * The corpus has one position per line: the columns played from an empty
+ * board (or - for the empty board itself) and the depth to search it to.
+ * Lines starting with # are comments. The program exits with status 1 if
+ * anything drifted.
+ */
+public class SearchRegression {
+	public static final String DEFAULT_CORPUS = "searchRegression.txt";
+	public static final String DEFAULT_BASELINE = "searchRegression.baseline";
+	public static final double DEFAULT_TOLERANCE = 0.02;
+	public static final int DEFAULT_PERFT_DEPTH = 8;
+	public static final int DEFAULT_ALLOCATION_DEPTH = 10;
+
+	// bytes a deeper search may allocate beyond the shallowest one, less than
+	// one small array per iteration of a ten ply search
+	private static final long ALLOCATION_SLACK = 128;
+	// each depth is measured this many times and the least is kept, so that
+	// the odd allocation by the JIT compiler doesn't count
+	private static final int ALLOCATION_RUNS = 3;
+
+	private static final char red = 'R';
+	private static final char yellow = 'Y';
+
+	private final TranspositionTable table = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
+	private double tolerance = DEFAULT_TOLERANCE;
+	private int failures;
+
+	public static void main(String[] args) throws IOException {
+		SearchRegression regression = new SearchRegression();
+		File corpus = new File(DEFAULT_CORPUS);
+		File baseline = new File(DEFAULT_BASELINE);
+		boolean record = false;
+		int perftDepth = DEFAULT_PERFT_DEPTH;
+		int allocationDepth = DEFAULT_ALLOCATION_DEPTH;
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-record")) {
+				record = true;
+			} else if (args[i].equals("-tolerance")) {
+				regression.tolerance = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("-corpus")) {
+				corpus = new File(args[++i]);
+			} else if (args[i].equals("-baseline")) {
+				baseline = new File(args[++i]);
+			} else if (args[i].equals("-perft")) {
+				perftDepth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-allocation")) {
+				allocationDepth = Integer.parseInt(args[++i]);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		Map<String, long[]> results = regression.run(readLines(corpus), perftDepth);
+
+		if (record) {
+			writeBaseline(results, baseline);
+			System.out.println("Recorded " + results.size() + " results in " + baseline);
+		} else {
+			regression.compare(results, readBaseline(baseline));
+			if (regression.failures > 0) {
+				System.out.println(regression.failures + " results drifted from " + baseline);
+				System.exit(1);
+			}
+			System.out.println("All " + results.size() + " results match " + baseline);
+		}
+
+		if (allocationDepth > 0) {
+			regression.checkAllocation(allocationDepth);
+			if (regression.failures > 0) {
+				System.out.println(regression.failures + " searches allocated more than at depth 1");
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Runs perft to every depth up to the given one, then searches every
+	 * position of the corpus with every algorithm
+	 *
+	 * @param corpus
+	 *            lines of the corpus file, without comments
+	 * @param perftDepth
+	 *            deepest perft to run
+	 * @return the results, keyed by what was run
+	 */
+	public Map<String, long[]> run(List<String> corpus, int perftDepth) {
+		Map<String, long[]> results = new LinkedHashMap<String, long[]>();
+
+		for (int depth = 1; depth <= perftDepth; depth++) {
+			long start = System.nanoTime();
+			long count = perft(new BitBoard(), depth);
+			long elapsed = Math.max(1, System.nanoTime() - start);
+			System.out.println("perft " + depth + ": " + count + " positions ("
+					+ count * 1000000000L / elapsed + " positions/s)");
+			results.put("perft " + depth, new long[] { count });
+		}
+
+		for (String line : corpus) {
+			String[] fields = line.split("\\s+");
+			String moves = fields[0];
+			int depth = Integer.parseInt(fields[1]);
+
+			for (CPU.SearchAlgorithm algorithm : CPU.SearchAlgorithm.values()) {
+				// the harness is for the minimax search
+				if (algorithm == CPU.SearchAlgorithm.MCTS) {
+					continue;
+				}
+				long[] result = search(moves, depth, algorithm);
+				String key = "search " + moves + " " + depth + " " + algorithm;
+				System.out.println(key + ": column " + result[0] + " score " + result[1] + " nodes " + result[2]
+						+ " evaluations " + result[3] + " beta cutoffs " + result[4] + " table cutoffs " + result[5]);
+				results.put(key, result);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Counts the positions reached by playing every sequence of the given
+	 * number of moves from a position. Games that are won on the way end
+	 * there and aren't counted.
+	 *
+	 * @param b
+	 *            position to start from
+	 * @param depth
+	 *            number of moves to play
+	 * @return number of positions reached
+	 */
+	public static long perft(BitBoard b, int depth) {
+		if (depth == 0) {
+			return 1;
+		}
+
+		long count = 0;
+		for (int column = 0; column < BitBoard.COLUMNS; column++) {
+			if (b.placeMove(column)) {
+				if (!b.lastPlayerHasWon()) {
+					count += perft(b, depth - 1);
+				}
+				b.undoMove(column);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Searches a position the way an Advanced CPU would, but to a fixed depth,
+	 * without the opening book or the endgame solver and from an empty table
+	 *
+	 * @return column, score, nodes, evaluations, beta cutoffs and table
+	 *         cutoffs
+	 */
+	private long[] search(String moves, int depth, CPU.SearchAlgorithm algorithm) {
+		GameModel model = new GameModel();
+		int count = (moves.equals("-")) ? 0 : moves.length();
+		for (int i = 0; i < count; i++) {
+			model.makeMove(moves.charAt(i) - '0', (i % 2 == 0) ? red : yellow);
+		}
+		// the CPU plays whoever is to move
+		model.setPlayerColor((count % 2 == 0) ? yellow : red);
+
+		table.clear();
+		CPU cpu = new CPU(model, 'A', table);
+		cpu.setOpeningBook(null);
+		cpu.setSolverThreshold(0);
+		cpu.setSearchDepth(depth);
+		cpu.setTimeBudget(0);
+		cpu.setSearchAlgorithm(algorithm);
+		cpu.setSearchStats(null);
+		int column = cpu.getAIMove();
+
+		return new long[] { column, cpu.getScore(), cpu.getNodesSearched(), cpu.getEvaluations(),
+				cpu.getBetaCutoffs(), table.getCutoffs() };
+	}
+
+	/**
+	 * Searches the empty board to every depth up to the given one with every
+	 * minimax algorithm and counts a failure for each search that allocated
+	 * more than the slack beyond the depth 1 search. The CPU, its table and
+	 * its search state are reused, as in a game, and warmed up first.
+	 *
+	 * @param maxDepth
+	 *            deepest search to measure
+	 */
+	public void checkAllocation(int maxDepth) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)
+				|| !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+			System.out.println("Skipping the allocation check, this JVM doesn't count allocations per thread");
+			return;
+		}
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		allocations.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+
+		for (CPU.SearchAlgorithm algorithm : CPU.SearchAlgorithm.values()) {
+			if (algorithm == CPU.SearchAlgorithm.MCTS) {
+				continue;
+			}
+
+			GameModel model = new GameModel();
+			model.setPlayerColor(yellow);
+			CPU cpu = new CPU(model, 'A', table);
+			cpu.setOpeningBook(null);
+			cpu.setSolvedPositionStore(null);
+			cpu.setSolverThreshold(0);
+			cpu.setTimeBudget(0);
+			cpu.setSearchAlgorithm(algorithm);
+			cpu.setSearchStats(null);
+			cpu.setSearchDepth(maxDepth);
+			for (int i = 0; i < ALLOCATION_RUNS; i++) {
+				table.clear();
+				cpu.getAIMove();
+			}
+
+			long shallowest = 0;
+			for (int depth = 1; depth <= maxDepth; depth++) {
+				cpu.setSearchDepth(depth);
+				long bytes = Long.MAX_VALUE;
+				for (int i = 0; i < ALLOCATION_RUNS; i++) {
+					table.clear();
+					long before = allocations.getThreadAllocatedBytes(thread);
+					cpu.getAIMove();
+					bytes = Math.min(bytes, allocations.getThreadAllocatedBytes(thread) - before);
+				}
+				if (depth == 1) {
+					shallowest = bytes;
+				}
+
+				String key = "allocation " + depth + " " + algorithm;
+				if (bytes > shallowest + ALLOCATION_SLACK) {
+					System.out.println(String.format("GREW %s: %d bytes, depth 1 %d bytes", key, bytes, shallowest));
+					failures++;
+				} else {
+					System.out.println(key + ": " + bytes + " bytes for " + cpu.getNodesSearched() + " nodes");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares results with a baseline and prints every difference. The
+	 * column, score and perft counts have to match exactly, the other
+	 * counts within the tolerance.
+	 */
+	private void compare(Map<String, long[]> results, Map<String, long[]> baseline) {
+		for (Map.Entry<String, long[]> entry : baseline.entrySet()) {
+			if (!results.containsKey(entry.getKey())) {
+				System.out.println("MISSING " + entry.getKey());
+				failures++;
+			}
+		}
+
+		String[] names = { "column", "score", "nodes", "evaluations", "beta cutoffs", "table cutoffs" };
+		for (Map.Entry<String, long[]> entry : results.entrySet()) {
+			long[] expected = baseline.get(entry.getKey());
+			long[] actual = entry.getValue();
+			if (expected == null) {
+				System.out.println("NEW " + entry.getKey());
+				failures++;
+				continue;
+			}
+
+			boolean perft = entry.getKey().startsWith("perft");
+			for (int i = 0; i < actual.length; i++) {
+				boolean exact = perft || i < 2;
+				double drift = (expected[i] != 0) ? (double) (actual[i] - expected[i]) / expected[i]
+						: (actual[i] != 0) ? 1 : 0;
+				if ((exact && actual[i] != expected[i]) || Math.abs(drift) > tolerance) {
+					System.out.println(String.format("DRIFT %s: %s %d, baseline %d (%+.1f%%)", entry.getKey(),
+							(perft) ? "positions" : names[i], actual[i], expected[i], drift * 100));
+					failures++;
+				}
+			}
+		}
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		try (BufferedReader in = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					lines.add(line);
+				}
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Reads a baseline, one result per line: its key followed by a colon and
+	 * its numbers
+	 */
+	private static Map<String, long[]> readBaseline(File file) throws IOException {
+		Map<String, long[]> baseline = new LinkedHashMap<String, long[]>();
+		for (String line : readLines(file)) {
+			int colon = line.indexOf(':');
+			String[] fields = line.substring(colon + 1).trim().split("\\s+");
+			long[] values = new long[fields.length];
+			for (int i = 0; i < fields.length; i++) {
+				values[i] = Long.parseLong(fields[i]);
+			}
+			baseline.put(line.substring(0, colon), values);
+		}
+		return baseline;
+	}
+
+	private static void writeBaseline(Map<String, long[]> results, File file) throws IOException {
+		try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			out.println("# Recorded by SearchRegression -record");
+			out.println("# perft depth: positions");
+			out.println("# search moves depth algorithm: column score nodes evaluations betaCutoffs tableCutoffs");
+			for (Map.Entry<String, long[]> entry : results.entrySet()) {
+				StringBuilder line = new StringBuilder(entry.getKey()).append(':');
+				for (long value : entry.getValue()) {
+					line.append(' ').append(value);
+				}
+				out.println(line);
+			}
+		}
+	}
+}
@@ -0,0 +1,362 @@
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Statistics of the CPU's searches, published as an MXBean so they can be
+ * watched in jconsole while the game is played. A CPU reports to its
+ * SearchStats once per move, after it has chosen the move, so keeping the
+ * statistics adds nothing to the search itself: the counters it reads are
+ * the ones the search keeps anyway.
+ *
+ * There are two sets of statistics, one for the moves the CPU plays and one
+ * for the replies it searches while pondering on the player's time but never
+ * plays, so that pondering doesn't hide the last real move. A pondered reply
+ * that is played counts as a move the CPU plays.
+ */
+public class SearchStats implements SearchStatsMXBean {
+	public static final String MOVES_NAME = "ConnectFour:type=SearchStats,name=Moves";
+	public static final String PONDERING_NAME = "ConnectFour:type=SearchStats,name=Pondering";
+
+	private static final char[] DIFFICULTIES = { 'B', 'I', 'A' };
+	private static final String[] DIFFICULTY_NAMES = { "Beginner", "Intermediate", "Advanced" };
+
+	private static final SearchStats moves = new SearchStats();
+	private static final SearchStats pondering = new SearchStats();
+
+	private final LongAdder moveCount = new LongAdder();
+	private final LongAdder nodes = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+	private final LongAdder betaCutoffs = new LongAdder();
+	private final LongAdder firstMoveCutoffs = new LongAdder();
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder tableCutoffs = new LongAdder();
+	private final LongAdder[] movesByDifficulty = adders(DIFFICULTIES.length);
+	private final LongAdder[] nanosByDifficulty = adders(DIFFICULTIES.length);
+
+	// replaced as a whole after every move so it is never read half written
+	private volatile Move last = new Move();
+
+	/**
+	 * @return statistics of the moves the CPU plays
+	 */
+	public static SearchStats getDefault() {
+		return moves;
+	}
+
+	/**
+	 * @return statistics of the replies the CPU searched while pondering
+	 *         that were not played
+	 */
+	public static SearchStats getPonderingStats() {
+		return pondering;
+	}
+
+	/**
+	 * Registers both sets of statistics with the platform MBean server. If
+	 * that fails the game still runs, just without the statistics.
+	 */
+	public static synchronized void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName movesName = new ObjectName(MOVES_NAME);
+			ObjectName ponderingName = new ObjectName(PONDERING_NAME);
+			if (!server.isRegistered(movesName)) {
+				server.registerMBean(moves, movesName);
+			}
+			if (!server.isRegistered(ponderingName)) {
+				server.registerMBean(pondering, ponderingName);
+			}
+		} catch (JMException e) {
+			System.err.println("Could not register search statistics: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param mode
+	 *            difficulty as stored in GameModel
+	 * @return name of the difficulty, or an empty string for none
+	 */
+	public static String getDifficultyName(char mode) {
+		for (int i = 0; i < DIFFICULTIES.length; i++) {
+			if (DIFFICULTIES[i] == mode) {
+				return DIFFICULTY_NAMES[i];
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * @param cpu
+	 *            a CPU that has just chosen a move
+	 * @return how the move was chosen: random, book, store, solver, mcts or
+	 *         search
+	 */
+	public static String getSource(CPU cpu) {
+		return (cpu.isStoredMove()) ? "store"
+				: (cpu.isSolved()) ? "solver"
+						: (cpu.isBookMove()) ? "book"
+								: (cpu.getPlayouts() > 0) ? "mcts"
+										: (cpu.getDepthReached() > 0) ? "search" : "random";
+	}
+
+	/**
+	 * Records a move the CPU has just chosen. Called by the CPU on the thread
+	 * that searched, once the search is over.
+	 *
+	 * @param cpu
+	 *            the CPU that chose the move
+	 * @param mode
+	 *            difficulty the move was chosen at
+	 * @param column
+	 *            column chosen
+	 * @param elapsed
+	 *            nanoseconds spent choosing the move
+	 */
+	public void moveFinished(CPU cpu, char mode, int column, long elapsed) {
+		Move move = new Move();
+		move.difficulty = mode;
+		move.source = getSource(cpu);
+		move.column = column;
+		move.score = cpu.getScore();
+		move.depth = cpu.getDepthReached();
+		move.nodes = cpu.getNodesSearched();
+		move.nanos = elapsed;
+		move.betaCutoffs = cpu.getBetaCutoffs();
+		move.firstMoveCutoffs = cpu.getFirstMoveCutoffs();
+		move.rootScores = cpu.getRootScores();
+
+		// the table's counters are reset at the start of every move that
+		// uses it
+		TranspositionTable table = cpu.getTranspositionTable();
+		if (table != null && (move.source.equals("search") || move.source.equals("solver"))) {
+			move.probes = table.getProbes();
+			move.hits = table.getHits();
+			move.tableCutoffs = table.getCutoffs();
+		}
+
+		moveCount.increment();
+		nodes.add(move.nodes);
+		nanos.add(elapsed);
+		betaCutoffs.add(move.betaCutoffs);
+		firstMoveCutoffs.add(move.firstMoveCutoffs);
+		probes.add(move.probes);
+		hits.add(move.hits);
+		tableCutoffs.add(move.tableCutoffs);
+		for (int i = 0; i < DIFFICULTIES.length; i++) {
+			if (DIFFICULTIES[i] == mode) {
+				movesByDifficulty[i].increment();
+				nanosByDifficulty[i].add(elapsed);
+			}
+		}
+		last = move;
+	}
+
+	/**
+	 * Adds the moves recorded in other statistics to these, and the last of
+	 * them becomes the last move here. The ponderer records each reply apart
+	 * this way until it knows whether the reply is played.
+	 *
+	 * @param other
+	 *            statistics that no CPU reports to any more
+	 */
+	public void add(SearchStats other) {
+		if (other.getMoves() == 0) {
+			return;
+		}
+		moveCount.add(other.moveCount.sum());
+		nodes.add(other.nodes.sum());
+		nanos.add(other.nanos.sum());
+		betaCutoffs.add(other.betaCutoffs.sum());
+		firstMoveCutoffs.add(other.firstMoveCutoffs.sum());
+		probes.add(other.probes.sum());
+		hits.add(other.hits.sum());
+		tableCutoffs.add(other.tableCutoffs.sum());
+		for (int i = 0; i < DIFFICULTIES.length; i++) {
+			movesByDifficulty[i].add(other.movesByDifficulty[i].sum());
+			nanosByDifficulty[i].add(other.nanosByDifficulty[i].sum());
+		}
+		last = other.last;
+	}
+
+	@Override
+	public long getMoves() {
+		return moveCount.sum();
+	}
+
+	@Override
+	public Map<String, Long> getMovesByDifficulty() {
+		return byDifficulty(movesByDifficulty, 1);
+	}
+
+	@Override
+	public long getNodes() {
+		return nodes.sum();
+	}
+
+	@Override
+	public long getNodesPerSecond() {
+		return perSecond(nodes.sum(), nanos.sum());
+	}
+
+	@Override
+	public long getBetaCutoffs() {
+		return betaCutoffs.sum();
+	}
+
+	@Override
+	public double getFirstMoveCutoffRate() {
+		return rate(firstMoveCutoffs.sum(), betaCutoffs.sum());
+	}
+
+	@Override
+	public double getTableHitRate() {
+		return rate(hits.sum(), probes.sum());
+	}
+
+	@Override
+	public double getTableCutoffRate() {
+		return rate(tableCutoffs.sum(), probes.sum());
+	}
+
+	@Override
+	public Map<String, Long> getSearchTimeMillis() {
+		return byDifficulty(nanosByDifficulty, 1000000);
+	}
+
+	@Override
+	public String getLastDifficulty() {
+		return getDifficultyName(last.difficulty);
+	}
+
+	@Override
+	public String getLastSource() {
+		return last.source;
+	}
+
+	@Override
+	public int getLastColumn() {
+		return last.column;
+	}
+
+	@Override
+	public int getLastScore() {
+		return last.score;
+	}
+
+	@Override
+	public int getLastDepth() {
+		return last.depth;
+	}
+
+	@Override
+	public long getLastNodes() {
+		return last.nodes;
+	}
+
+	@Override
+	public long getLastNodesPerSecond() {
+		Move move = last;
+		return perSecond(move.nodes, move.nanos);
+	}
+
+	@Override
+	public long getLastSearchTimeMillis() {
+		return last.nanos / 1000000;
+	}
+
+	@Override
+	public long getLastBetaCutoffs() {
+		return last.betaCutoffs;
+	}
+
+	@Override
+	public double getLastFirstMoveCutoffRate() {
+		Move move = last;
+		return rate(move.firstMoveCutoffs, move.betaCutoffs);
+	}
+
+	@Override
+	public double getLastTableHitRate() {
+		Move move = last;
+		return rate(move.hits, move.probes);
+	}
+
+	@Override
+	public Map<Integer, Integer> getLastRootScores() {
+		int[] scores = last.rootScores;
+		Map<Integer, Integer> map = new LinkedHashMap<Integer, Integer>();
+		for (int column = 0; column < scores.length; column++) {
+			if (scores[column] != Integer.MIN_VALUE) {
+				map.put(column, scores[column]);
+			}
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	@Override
+	public void reset() {
+		moveCount.reset();
+		nodes.reset();
+		nanos.reset();
+		betaCutoffs.reset();
+		firstMoveCutoffs.reset();
+		probes.reset();
+		hits.reset();
+		tableCutoffs.reset();
+		for (int i = 0; i < DIFFICULTIES.length; i++) {
+			movesByDifficulty[i].reset();
+			nanosByDifficulty[i].reset();
+		}
+		last = new Move();
+	}
+
+	private Map<String, Long> byDifficulty(LongAdder[] adders, long divisor) {
+		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < DIFFICULTIES.length; i++) {
+			map.put(DIFFICULTY_NAMES[i], adders[i].sum() / divisor);
+		}
+		return map;
+	}
+
+	private static long perSecond(long count, long nanos) {
+		return (nanos > 0) ? count * 1000000000L / nanos : 0;
+	}
+
+	private static double rate(long count, long total) {
+		return (total > 0) ? (double) count / total : 0;
+	}
+
+	private static LongAdder[] adders(int count) {
+		LongAdder[] adders = new LongAdder[count];
+		for (int i = 0; i < count; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * What was recorded about one move
+	 */
+	private static class Move {
+		private char difficulty;
+		private String source = "";
+		private int column = -1;
+		private int score;
+		private int depth;
+		private long nodes;
+		private long nanos;
+		private long betaCutoffs;
+		private long firstMoveCutoffs;
+		private long probes;
+		private long hits;
+		private long tableCutoffs;
+		private int[] rootScores = new int[0];
+	}
+}
@@ -0,0 +1,126 @@
+import java.util.Map;
+
+/**
+ * Management interface of SearchStats, readable from jconsole or any other
+ * JMX client. Totals count every CPU move since the statistics were last
+ * reset; the "last" attributes describe the most recent move alone.
+ */
+public interface SearchStatsMXBean {
+
+	/**
+	 * @return number of CPU moves recorded
+	 */
+	long getMoves();
+
+	/**
+	 * @return number of moves recorded at each difficulty
+	 */
+	Map<String, Long> getMovesByDifficulty();
+
+	/**
+	 * @return total nodes visited by the search and the endgame solver
+	 */
+	long getNodes();
+
+	/**
+	 * @return total nodes divided by total time spent choosing moves
+	 */
+	long getNodesPerSecond();
+
+	/**
+	 * @return total number of moves that caused a beta cutoff
+	 */
+	long getBetaCutoffs();
+
+	/**
+	 * @return share of all beta cutoffs caused by the first move searched
+	 */
+	double getFirstMoveCutoffRate();
+
+	/**
+	 * @return share of all transposition table probes that found their
+	 *         position
+	 */
+	double getTableHitRate();
+
+	/**
+	 * @return share of all transposition table probes whose result cut off
+	 *         the search of a subtree
+	 */
+	double getTableCutoffRate();
+
+	/**
+	 * @return total milliseconds spent choosing moves at each difficulty
+	 */
+	Map<String, Long> getSearchTimeMillis();
+
+	/**
+	 * @return difficulty of the last move
+	 */
+	String getLastDifficulty();
+
+	/**
+	 * @return how the last move was chosen: random, book, store, solver, mcts
+	 *         or search
+	 */
+	String getLastSource();
+
+	/**
+	 * @return column of the last move
+	 */
+	int getLastColumn();
+
+	/**
+	 * @return score of the last move, from the CPU's point of view
+	 */
+	int getLastScore();
+
+	/**
+	 * @return depth of the last completed iteration of the last move
+	 */
+	int getLastDepth();
+
+	/**
+	 * @return nodes visited for the last move
+	 */
+	long getLastNodes();
+
+	/**
+	 * @return nodes per second of the last move
+	 */
+	long getLastNodesPerSecond();
+
+	/**
+	 * @return milliseconds spent choosing the last move
+	 */
+	long getLastSearchTimeMillis();
+
+	/**
+	 * @return beta cutoffs of the last move
+	 */
+	long getLastBetaCutoffs();
+
+	/**
+	 * @return share of the last move's beta cutoffs caused by the first move
+	 *         searched
+	 */
+	double getLastFirstMoveCutoffRate();
+
+	/**
+	 * @return share of the last move's table probes that found their
+	 *         position
+	 */
+	double getLastTableHitRate();
+
+	/**
+	 * @return score of each column searched at the root in the last completed
+	 *         iteration of the last move. Only the best column's score is
+	 *         exact; columns that were cut off have an upper bound.
+	 */
+	Map<Integer, Integer> getLastRootScores();
+
+	/**
+	 * Sets every total back to zero
+	 */
+	void reset();
+}
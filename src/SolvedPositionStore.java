@@ -0,0 +1,381 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Exact results of positions the CPU has solved, kept in a file so they
+ * survive from one run of the game to the next. The endgame solver is the
+ * most expensive thing the CPU does, and the same endgames come up again and
+ * again, so a position solved once is never solved again.
+ *
+ * The file is a header followed by a fixed number of slots, an open-addressed
+ * hash table that is memory-mapped and read and written in place. A position
+ * is kept in one of the PROBE_SLOTS slots after the one its key hashes to;
+ * when they are all taken, the position with the fewest empty spaces (the
+ * cheapest to solve again) makes way. Positions are keyed on their canonical
+ * key (see BitBoard.getCanonicalKey), so a position and its mirror image
+ * share a slot.
+ *
+ * <pre>
+ * header: int magic, int version, int slot count, int unused
+ * slot: long key, int data, int checksum
+ * data: byte score, byte column, byte empty spaces, byte 1
+ * </pre>
+ *
+ * Every slot carries a checksum of its key and data. A slot torn by a crash
+ * halfway through writing it, or read by another process while it is being
+ * written, fails the checksum and reads as empty instead of as a wrong
+ * result. Writes are flushed to disk in the background. The file is only
+ * ever replaced whole, by renaming a new file over it, so a process that
+ * still has the old file mapped keeps reading it safely.
+ */
+public class SolvedPositionStore {
+	public static final String DEFAULT_FILE = "solvedPositions.bin";
+	public static final int DEFAULT_SIZE_MB = 16;
+
+	// system property that overrides the size of the default store
+	public static final String SIZE_PROPERTY = "connectfour.solvedPositionsMB";
+
+	static final int MAGIC = 0x43345350; // "C4SP"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 16;
+	static final int SLOT_BYTES = 16;
+
+	// slots a position can be kept in, starting at the one its key hashes to
+	static final int PROBE_SLOTS = 8;
+
+	// the largest store that fits in one mapped buffer
+	private static final int MAX_SLOTS = 1 << 26;
+
+	// how long after a write the file is flushed to disk
+	private static final long FLUSH_DELAY_MILLIS = 1000;
+
+	private static SolvedPositionStore defaultStore;
+
+	private final File file;
+	private final MappedByteBuffer buffer;
+	private final ByteBuffer slots;
+	private final int slotMask;
+	private final AtomicBoolean flushPending = new AtomicBoolean();
+	private final ScheduledExecutorService flusher = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Solved position flusher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Opens a store, creating the file if there is none. A file of a
+	 * different size is replaced by one of the given size holding as many of
+	 * its positions as fit.
+	 *
+	 * @param file
+	 *            file the store is kept in
+	 * @param sizeMB
+	 *            largest size of the file in megabytes
+	 * @throws IOException
+	 *             if the file can't be read or written
+	 */
+	public SolvedPositionStore(File file, int sizeMB) throws IOException {
+		if (sizeMB < 1) {
+			throw new IllegalArgumentException("Store size must be at least 1 MB");
+		}
+		this.file = file;
+
+		// round the slot count down to a power of two so an index is a mask
+		long count = Long.highestOneBit((((long) sizeMB << 20) - HEADER_BYTES) / SLOT_BYTES);
+		int slotCount = (int) Math.min(count, MAX_SLOTS);
+
+		ByteBuffer existing = readSlots(file);
+		if (existing == null || existing.capacity() != slotCount * SLOT_BYTES) {
+			create(file, slotCount, existing);
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					HEADER_BYTES + (long) slotCount * SLOT_BYTES);
+		}
+		buffer.position(HEADER_BYTES);
+		this.slots = buffer.slice();
+		this.slotMask = slotCount - 1;
+	}
+
+	/**
+	 * Opens the store in DEFAULT_FILE in the working directory, which every
+	 * CPU created afterwards uses. Its size is DEFAULT_SIZE_MB unless the
+	 * SIZE_PROPERTY system property says otherwise. The store is flushed
+	 * when the program exits.
+	 *
+	 * @return the default store, or null if it couldn't be opened
+	 */
+	public static synchronized SolvedPositionStore openDefault() {
+		if (defaultStore == null) {
+			try {
+				defaultStore = new SolvedPositionStore(new File(DEFAULT_FILE),
+						Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE_MB));
+			} catch (IOException | IllegalArgumentException e) {
+				System.err.println("Could not open solved positions: " + e.getMessage());
+				return null;
+			}
+
+			final SolvedPositionStore store = defaultStore;
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					store.flush();
+				}
+			});
+		}
+		return defaultStore;
+	}
+
+	/**
+	 * Gets the store opened by openDefault
+	 *
+	 * @return the default store, or null if it hasn't been opened
+	 */
+	public static synchronized SolvedPositionStore getDefault() {
+		return defaultStore;
+	}
+
+	/**
+	 * Looks up a position
+	 *
+	 * @param b
+	 *            position to look up
+	 * @return packed result of the position, with the column translated to
+	 *         the position's side, or 0 if it is not stored
+	 */
+	public int find(BitBoard b) {
+		long key = b.getCanonicalKey();
+		int data = find(slots, slotMask, key);
+		if (data == 0 || !b.isKeyMirrored()) {
+			return data;
+		}
+		return (data & ~0xFF00) | (BitBoard.mirrorColumn(getColumn(data)) << 8);
+	}
+
+	/**
+	 * Stores the exact result of a position. The file is flushed to disk
+	 * shortly afterwards on a background thread.
+	 *
+	 * @param b
+	 *            position that was solved
+	 * @param score
+	 *            score of the position for the player to move, as returned
+	 *            by EndgameSolver.solve
+	 * @param column
+	 *            best column of the position
+	 */
+	public void store(BitBoard b, int score, int column) {
+		if (b.isKeyMirrored()) {
+			column = BitBoard.mirrorColumn(column);
+		}
+		int emptySpaces = BitBoard.ROWS * BitBoard.COLUMNS - b.getMoves();
+		int data = (score & 0xFF) | (column << 8) | (emptySpaces << 16) | (1 << 24);
+
+		synchronized (this) {
+			put(slots, slotMask, b.getCanonicalKey(), data);
+		}
+
+		if (flushPending.compareAndSet(false, true)) {
+			flusher.schedule(new Runnable() {
+				public void run() {
+					flushPending.set(false);
+					flush();
+				}
+			}, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes every stored position to disk now
+	 */
+	public void flush() {
+		buffer.force();
+	}
+
+	/**
+	 * @param data
+	 *            packed result returned by find
+	 * @return score of the position for the player to move, as returned by
+	 *         EndgameSolver.solve
+	 */
+	public static int getScore(int data) {
+		return (byte) data;
+	}
+
+	/**
+	 * @param data
+	 *            packed result returned by find
+	 * @return best column of the position
+	 */
+	public static int getColumn(int data) {
+		return (data >> 8) & 0xFF;
+	}
+
+	/**
+	 * @return number of positions the store can hold
+	 */
+	public int capacity() {
+		return slotMask + 1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return file + " (" + capacity() + " slots)";
+	}
+
+	/**
+	 * Finds a key in the slots it can be kept in
+	 *
+	 * @return the key's data, or 0 if it is not there
+	 */
+	private static int find(ByteBuffer slots, int slotMask, long key) {
+		int home = index(key, slotMask);
+		for (int i = 0; i < PROBE_SLOTS; i++) {
+			int offset = ((home + i) & slotMask) * SLOT_BYTES;
+			int data = slots.getInt(offset + 8);
+			if (data != 0 && slots.getLong(offset) == key && slots.getInt(offset + 12) == checksum(key, data)) {
+				return data;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Writes a key into the slot that already holds it, or else the first
+	 * empty or damaged slot, or else the slot holding the position with the
+	 * fewest empty spaces if that is no more than the new one's
+	 */
+	private static void put(ByteBuffer slots, int slotMask, long key, int data) {
+		int home = index(key, slotMask);
+		int target = -1;
+		int targetSpaces = (data >> 16) & 0xFF;
+
+		for (int i = 0; i < PROBE_SLOTS; i++) {
+			int offset = ((home + i) & slotMask) * SLOT_BYTES;
+			long slotKey = slots.getLong(offset);
+			int slotData = slots.getInt(offset + 8);
+			boolean valid = slotData != 0 && slots.getInt(offset + 12) == checksum(slotKey, slotData);
+
+			if (!valid || slotKey == key) {
+				target = offset;
+				break;
+			}
+			int spaces = (slotData >> 16) & 0xFF;
+			if (spaces <= targetSpaces) {
+				target = offset;
+				targetSpaces = spaces;
+			}
+		}
+
+		if (target >= 0) {
+			slots.putLong(target, key);
+			slots.putInt(target + 8, data);
+			slots.putInt(target + 12, checksum(key, data));
+		}
+	}
+
+	private static int index(long key, int slotMask) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & slotMask;
+	}
+
+	/**
+	 * Checksum of a slot. Zeroed slots never pass it, because valid data
+	 * always has its top byte set.
+	 */
+	private static int checksum(long key, int data) {
+		long h = (key ^ 0xC2B2AE3D27D4EB4FL) * 0x9E3779B97F4A7C15L + data;
+		h = (h ^ (h >>> 31)) * 0xBF58476D1CE4E5B9L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Maps the slots of an existing store file read-only
+	 *
+	 * @return the slots, or null if there is no file or it isn't a store
+	 */
+	private static ByteBuffer readSlots(File file) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		MappedByteBuffer existing;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			existing = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (existing.capacity() < HEADER_BYTES || existing.getInt(0) != MAGIC || existing.getInt(4) != VERSION) {
+			return null;
+		}
+		int count = existing.getInt(8);
+		if (count <= 0 || Integer.bitCount(count) != 1 || count > MAX_SLOTS
+				|| existing.capacity() != HEADER_BYTES + (long) count * SLOT_BYTES) {
+			return null;
+		}
+
+		existing.position(HEADER_BYTES);
+		return existing.slice();
+	}
+
+	/**
+	 * Writes a new, empty store file next to the given one, copies over the
+	 * positions of the old store, and renames it over the given file
+	 *
+	 * @param old
+	 *            slots of the store being replaced, or null
+	 */
+	private static void create(File file, int slotCount, ByteBuffer old) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		try {
+			try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+				out.setLength(HEADER_BYTES + (long) slotCount * SLOT_BYTES);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(slotCount);
+				out.writeInt(0);
+
+				if (old != null) {
+					MappedByteBuffer buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, out.length());
+					buffer.position(HEADER_BYTES);
+					ByteBuffer slots = buffer.slice();
+					int oldCount = old.capacity() / SLOT_BYTES;
+					for (int i = 0; i < oldCount; i++) {
+						int offset = i * SLOT_BYTES;
+						long key = old.getLong(offset);
+						int data = old.getInt(offset + 8);
+						if (data != 0 && old.getInt(offset + 12) == checksum(key, data)) {
+							put(slots, slotCount - 1, key, data);
+						}
+					}
+					buffer.force();
+				}
+				out.getFD().sync();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+	}
+}
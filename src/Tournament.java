@@ -0,0 +1,315 @@
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays the CPU against itself from the command line, to measure how much
+ * stronger one setup is than another and how fast each one plays. Games are
+ * played on GameControllers, one per side, exactly as BoardScreen plays
+ * them, but nothing is shown, so it runs with java.awt.headless=true:
+ *
+ * <pre>
+ * java -Djava.awt.headless=true Tournament [-games n] [-threads n] [-openings plies] [-seed s] [-a setup] [-b setup]
+ * </pre>
+ *
+ * A setup is a difficulty optionally followed by a depth, a time budget in
+ * milliseconds and a search algorithm, separated by colons, e.g. A:10:500:PVS
+ * or B. The Advanced CPU plays the same game every time from the same
+ * position, so each game starts with a few random moves (2 by default,
+ * repeatable with the seed), and each opening is played twice with the sides
+ * swapped so neither setup gets the first move more often.
+ */
+public class Tournament {
+	private static final char red = 'R';
+	private static final char yellow = 'Y';
+
+	private final Setup a;
+	private final Setup b;
+	private final int openingPlies;
+	private final long seed;
+
+	// the side the results are counted for is setup a
+	private final LongAdder wins = new LongAdder();
+	private final LongAdder draws = new LongAdder();
+	private final LongAdder losses = new LongAdder();
+	private final AtomicInteger gamesPlayed = new AtomicInteger();
+
+	// four GameControllers for each thread, one for each setup playing each
+	// color, indexed [setup][color]; they are set up once and kept from game
+	// to game, so their CPUs and tables are only created once
+	private final ThreadLocal<GameController[][]> controllers = new ThreadLocal<GameController[][]>();
+
+	/**
+	 * Creates a tournament between two setups
+	 *
+	 * @param a
+	 *            first setup, whose results are reported
+	 * @param b
+	 *            second setup
+	 * @param openingPlies
+	 *            number of random moves each game starts with
+	 * @param seed
+	 *            seed of the random openings
+	 */
+	public Tournament(Setup a, Setup b, int openingPlies, long seed) {
+		this.a = a;
+		this.b = b;
+		this.openingPlies = openingPlies;
+		this.seed = seed;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+
+		// the CPU's moves are recorded when run with Flight Recorder
+		FlightRecorderEvents.initialize();
+
+		int games = 1000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int openingPlies = 2;
+		long seed = 20171120L;
+		Setup a = Setup.parse("A");
+		Setup b = Setup.parse("I");
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-games")) {
+				games = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-openings")) {
+				openingPlies = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-seed")) {
+				seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-a")) {
+				a = Setup.parse(args[++i]);
+			} else if (args[i].equals("-b")) {
+				b = Setup.parse(args[++i]);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		Tournament tournament = new Tournament(a, b, openingPlies, seed);
+		tournament.play(games, threads);
+	}
+
+	/**
+	 * Plays the given number of games spread over a number of threads and
+	 * prints the results
+	 *
+	 * @param games
+	 *            number of games
+	 * @param threads
+	 *            number of games played at once
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the games
+	 */
+	public void play(final int games, int threads) throws InterruptedException {
+		final PrintStream out = System.out;
+		out.println("Playing " + games + " games of " + a + " against " + b + " on " + threads + " threads");
+
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int i = 0; i < games; i++) {
+				final int game = i;
+				executor.execute(new Runnable() {
+					public void run() {
+						playGame(game);
+						int played = gamesPlayed.incrementAndGet();
+						if (played % Math.max(1, games / 10) == 0) {
+							out.println(played + " games played");
+						}
+					}
+				});
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+		long elapsed = Math.max(1, System.nanoTime() - start);
+
+		long played = wins.sum() + draws.sum() + losses.sum();
+		out.println();
+		out.println(String.format(Locale.ROOT, "%s against %s: %d wins, %d draws, %d losses (score %.1f%%)", a, b,
+				wins.sum(), draws.sum(), losses.sum(),
+				(played > 0) ? 100.0 * (wins.sum() + 0.5 * draws.sum()) / played : 0));
+		out.println(String.format(Locale.ROOT, "%d games in %.1f s (%.1f games/s)", played, elapsed / 1e9,
+				played * 1e9 / elapsed));
+		a.print(out);
+		b.print(out);
+	}
+
+	/**
+	 * Plays one game. Games come in pairs with the same opening, setup a
+	 * playing red in the even one and yellow in the odd one.
+	 *
+	 * @param game
+	 *            number of the game
+	 */
+	private void playGame(int game) {
+		GameController[][] all = controllers.get();
+		if (all == null) {
+			all = new GameController[][] { { createController(a, red), createController(a, yellow) },
+					{ createController(b, red), createController(b, yellow) } };
+			controllers.set(all);
+		}
+
+		// side 0 is red, which moves first
+		int redSetup = game % 2;
+		Setup[] setups = (redSetup == 0) ? new Setup[] { a, b } : new Setup[] { b, a };
+		GameController[] sides = { all[redSetup][0], all[1 - redSetup][1] };
+		for (GameController controller : sides) {
+			controller.resetBoard();
+			controller.getTranspositionTable().clear();
+		}
+
+		GameController referee = sides[0];
+		Random rand = new Random(seed + game / 2);
+		int side = 0;
+		int moves = 0;
+		int winner = -1;
+
+		while (!referee.boardIsFull()) {
+			int column;
+			if (moves < openingPlies) {
+				do {
+					column = rand.nextInt(BitBoard.COLUMNS);
+				} while (referee.columnIsFull(column));
+			} else {
+				CPU cpu = sides[side].getCPU();
+				long start = System.nanoTime();
+				column = cpu.getAIMove();
+				setups[side].moveFinished(System.nanoTime() - start, cpu.getNodesSearched(), cpu.getPlayouts());
+			}
+
+			char color = (side == 0) ? red : yellow;
+			for (GameController controller : sides) {
+				controller.placeMove(column, color);
+			}
+			moves++;
+
+			if (referee.checkLastMoveWin()) {
+				winner = side;
+				break;
+			}
+			side ^= 1;
+		}
+
+		Setup winningSetup = (winner >= 0) ? setups[winner] : null;
+		if (winningSetup == null) {
+			draws.increment();
+		} else if (winningSetup == a) {
+			wins.increment();
+		} else {
+			losses.increment();
+		}
+	}
+
+	/**
+	 * Creates a GameController whose CPU plays a setup as one color, without
+	 * pondering
+	 *
+	 * @param setup
+	 *            how the CPU plays
+	 * @param cpuColor
+	 *            color the CPU plays
+	 * @return the controller
+	 */
+	private static GameController createController(Setup setup, char cpuColor) {
+		GameController controller = new GameController();
+		controller.setPondering(false);
+		controller.setMode(setup.mode);
+		controller.setSearchAlgorithm(setup.mode, setup.algorithm);
+		controller.setPlayerColor((cpuColor == red) ? yellow : red);
+
+		CPU cpu = controller.getCPU();
+		cpu.setSearchDepth(setup.depth);
+		cpu.setTimeBudget(setup.timeBudget);
+		return controller;
+	}
+
+	/**
+	 * How one side of the tournament plays, and the totals of its moves
+	 */
+	public static class Setup {
+		private final char mode;
+		private final int depth;
+		private final long timeBudget;
+		private final CPU.SearchAlgorithm algorithm;
+		private final LongAdder moves = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder nodes = new LongAdder();
+		private final LongAdder playouts = new LongAdder();
+
+		/**
+		 * @param mode
+		 *            difficulty, B, I or A
+		 * @param depth
+		 *            maximum search depth
+		 * @param timeBudget
+		 *            milliseconds per move, or 0 for no limit
+		 * @param algorithm
+		 *            search algorithm
+		 */
+		public Setup(char mode, int depth, long timeBudget, CPU.SearchAlgorithm algorithm) {
+			this.mode = mode;
+			this.depth = depth;
+			this.timeBudget = timeBudget;
+			this.algorithm = algorithm;
+		}
+
+		/**
+		 * Reads a setup written as mode[:depth[:millis[:algorithm]]], with
+		 * the CPU's defaults for anything left out
+		 *
+		 * @param text
+		 *            the setup
+		 * @return the setup
+		 */
+		public static Setup parse(String text) {
+			String[] fields = text.split(":");
+			char mode = Character.toUpperCase(fields[0].charAt(0));
+			if (mode != 'B' && mode != 'I' && mode != 'A') {
+				throw new IllegalArgumentException("Unknown difficulty " + fields[0]);
+			}
+			int depth = (fields.length > 1) ? Integer.parseInt(fields[1]) : 8;
+			long timeBudget = (fields.length > 2) ? Long.parseLong(fields[2]) : CPU.DEFAULT_TIME_BUDGET;
+			CPU.SearchAlgorithm algorithm = (fields.length > 3)
+					? CPU.SearchAlgorithm.valueOf(fields[3].toUpperCase(Locale.ROOT))
+					: CPU.DEFAULT_SEARCH_ALGORITHM;
+			return new Setup(mode, depth, timeBudget, algorithm);
+		}
+
+		private void moveFinished(long elapsed, long searched, long played) {
+			moves.increment();
+			nanos.add(elapsed);
+			nodes.add(searched);
+			playouts.add(played);
+		}
+
+		private void print(PrintStream out) {
+			long count = Math.max(1, moves.sum());
+			long time = Math.max(1, nanos.sum());
+			out.println(String.format(Locale.ROOT, "%-24s %d moves, %.2f ms/move, %d nodes/s", this + ":",
+					moves.sum(), time / 1e6 / count, nodes.sum() * 1000000000L / time)
+					+ ((playouts.sum() > 0) ? ", " + playouts.sum() * 1000000000L / time + " playouts/s" : ""));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return SearchStats.getDifficultyName(mode) + ":" + depth + ":" + timeBudget + ":" + algorithm;
+		}
+	}
+}
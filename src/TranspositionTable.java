@@ -0,0 +1,216 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size hash table that remembers the results of positions the CPU has
+ * already searched. Connect Four reaches the same position through many move
+ * orders, so a stored score (and the bound it represents) lets the search skip
+ * whole subtrees it has already evaluated. Entries are replaced by depth: a
+ * deeper result is never overwritten by a shallower one from the same search.
+ * The table can be shared by several search threads without locking: each
+ * entry is two longs in one array, the packed data and the position key XORed
+ * with that data. An entry torn by two threads writing at once no longer
+ * decodes to its key, so it reads as a miss instead of a wrong result.
+ */
+public class TranspositionTable {
+	public static final int DEFAULT_SIZE_MB = 16;
+
+	public static final int EXACT = 1;
+	public static final int LOWER_BOUND = 2;
+	public static final int UPPER_BOUND = 3;
+
+	// each entry is a checked key and a packed data word
+	private static final int ENTRY_BYTES = 16;
+
+	// packed data word layout (low to high bits)
+	private static final int SCORE_BITS = 32;
+	private static final int DEPTH_SHIFT = 32;
+	private static final int BOUND_SHIFT = 40;
+	private static final int COLUMN_SHIFT = 42;
+	private static final int GENERATION_SHIFT = 46;
+
+	private final long[] entries;
+	private final int indexMask;
+	private volatile int generation;
+
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder cutoffs = new LongAdder();
+	private final LongAdder stores = new LongAdder();
+
+	/**
+	 * Creates a new table that uses at most the given amount of memory
+	 *
+	 * @param sizeMB
+	 *            size of the table in megabytes
+	 */
+	public TranspositionTable(int sizeMB) {
+		if (sizeMB < 1) {
+			throw new IllegalArgumentException("Table size must be at least 1 MB");
+		}
+
+		// round the entry count down to a power of two so an index is a mask
+		long count = Long.highestOneBit(((long) sizeMB << 20) / ENTRY_BYTES);
+		count = Math.min(count, 1 << 29);
+		this.entries = new long[(int) count * 2];
+		this.indexMask = (int) count - 1;
+	}
+
+	/**
+	 * Looks up a position in the table
+	 *
+	 * @param key
+	 *            hash of the position
+	 * @return packed entry for the position, or 0 if it is not stored
+	 */
+	public long probe(long key) {
+		probes.increment();
+		int index = ((int) key & indexMask) * 2;
+		long data = entries[index + 1];
+
+		if (data != 0 && (entries[index] ^ data) == key) {
+			hits.increment();
+			return data;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Stores the result of a search. The entry already in the slot is kept
+	 * only if it is from the current search and was searched deeper.
+	 *
+	 * @param key
+	 *            hash of the position
+	 * @param score
+	 *            score of the position
+	 * @param bound
+	 *            EXACT, LOWER_BOUND or UPPER_BOUND
+	 * @param depth
+	 *            remaining depth the position was searched to
+	 * @param column
+	 *            best column found for the position, or -1 if none
+	 */
+	public void store(long key, int score, int bound, int depth, int column) {
+		int index = ((int) key & indexMask) * 2;
+		int current = generation & 0xFF;
+		long old = entries[index + 1];
+
+		if (old != 0 && (entries[index] ^ old) != key && getGeneration(old) == current && getDepth(old) > depth) {
+			return;
+		}
+
+		long data = (score & 0xFFFFFFFFL) | ((long) depth << DEPTH_SHIFT) | ((long) bound << BOUND_SHIFT)
+				| ((long) (column + 1) << COLUMN_SHIFT) | ((long) current << GENERATION_SHIFT);
+		stores.increment();
+		entries[index] = key ^ data;
+		entries[index + 1] = data;
+	}
+
+	/**
+	 * Marks the start of a new search so entries left over from earlier
+	 * searches can be replaced regardless of their depth
+	 */
+	public void newSearch() {
+		generation++;
+	}
+
+	/**
+	 * Records that a probe result was used to cut off a subtree
+	 */
+	public void recordCutoff() {
+		cutoffs.increment();
+	}
+
+	/**
+	 * Removes every entry and resets the counters
+	 */
+	public void clear() {
+		Arrays.fill(entries, 0);
+		resetCounters();
+	}
+
+	/**
+	 * Resets the probe, hit, cutoff and store counters
+	 */
+	public void resetCounters() {
+		probes.reset();
+		hits.reset();
+		cutoffs.reset();
+		stores.reset();
+	}
+
+	/**
+	 * @return number of entries the table can hold
+	 */
+	public int getCapacity() {
+		return entries.length / 2;
+	}
+
+	public long getProbes() {
+		return probes.sum();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getCutoffs() {
+		return cutoffs.sum();
+	}
+
+	public long getStores() {
+		return stores.sum();
+	}
+
+	/**
+	 * @param entry
+	 *            packed entry returned by probe
+	 * @return stored score
+	 */
+	public static int getScore(long entry) {
+		return (int) (entry & ((1L << SCORE_BITS) - 1));
+	}
+
+	/**
+	 * @param entry
+	 *            packed entry returned by probe
+	 * @return remaining depth the stored score was searched to
+	 */
+	public static int getDepth(long entry) {
+		return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * @param entry
+	 *            packed entry returned by probe
+	 * @return EXACT, LOWER_BOUND or UPPER_BOUND
+	 */
+	public static int getBound(long entry) {
+		return (int) (entry >>> BOUND_SHIFT) & 0x3;
+	}
+
+	/**
+	 * @param entry
+	 *            packed entry returned by probe
+	 * @return best column stored for the position, or -1 if none
+	 */
+	public static int getColumn(long entry) {
+		return ((int) (entry >>> COLUMN_SHIFT) & 0xF) - 1;
+	}
+
+	private static int getGeneration(long entry) {
+		return (int) (entry >>> GENERATION_SHIFT) & 0xFF;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "probes=" + getProbes() + " hits=" + getHits() + " cutoffs=" + getCutoffs() + " stores="
+				+ getStores();
+	}
+}